@@ -0,0 +1,104 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import elliott803.machine.Computer;
+import elliott803.machine.Word;
+
+/**
+ * JMH benchmarks for the ALU class.
+ *
+ * Each benchmark works through a table of random operands, so the single length
+ * multiply sees a mix of small and large values.
+ *
+ * @author Baldwin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchALU {
+
+    static final int COUNT = 1024;
+
+    ALU alu;
+    long[] n1, n2, nx;
+    int[] shift;
+    int index;
+
+    @Setup
+    public void setUp() {
+        alu = new ALU(new Computer(true));
+        Random random = new Random(803);
+        n1 = new long[COUNT];
+        n2 = new long[COUNT];
+        nx = new long[COUNT];
+        shift = new int[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            n1[i] = Word.asInteger(random.nextLong() >> random.nextInt(39));
+            n2[i] = Word.asInteger(random.nextLong() >> random.nextInt(39));
+            nx[i] = Word.asExtension(random.nextLong());
+            shift[i] = random.nextInt(128);
+        }
+    }
+
+    int next() {
+        index = (index + 1) & (COUNT-1);
+        return index;
+    }
+
+    @Benchmark
+    public long add() {
+        int i = next();
+        return alu.add(n1[i], n2[i]);
+    }
+
+    @Benchmark
+    public long shl() {
+        int i = next();
+        return alu.shl(n1[i], shift[i] & 0x3F);
+    }
+
+    @Benchmark
+    public long mul() {
+        int i = next();
+        return alu.mul(n1[i], n2[i]);
+    }
+
+    @Benchmark
+    public long longMul() {
+        int i = next();
+        return alu.longMul(n1[i], n2[i]) + alu.getExtension();
+    }
+
+    @Benchmark
+    public long longDiv() {
+        int i = next();
+        return alu.longDiv(n1[i], nx[i], n2[i]);
+    }
+
+    @Benchmark
+    public long longShl() {
+        int i = next();
+        return alu.longShl(n1[i], nx[i], shift[i]) + alu.getExtension();
+    }
+
+    @Benchmark
+    public long longShr() {
+        int i = next();
+        return alu.longShr(n1[i], nx[i], shift[i]) + alu.getExtension();
+    }
+}
@@ -0,0 +1,116 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import elliott803.machine.Computer;
+import elliott803.machine.Instruction;
+import elliott803.machine.Word;
+
+/**
+ * JMH benchmarks for instruction execution.
+ *
+ * Each 'mix' is a small loop of instructions held in the store.  The benchmarks
+ * either obey one instruction at a time, as in step-by-step or trace mode, or run
+ * one block of instructions, as in normal execution.
+ *
+ * @author Baldwin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchCPU {
+
+    // Instruction loops as { op1, addr1, op2, addr2 } for each word
+    static final int[][] INTEGER = {
+        { 030, 200, 004, 201 },         // Load, add
+        { 005, 202, 020, 203 },         // Subtract, store
+        { 022, 204, 003, 205 },         // Increment store, collate
+        { 051, 2, 055, 1 },             // Shift right, shift left
+        { 040, 100, 000, 0 },           // Loop
+    };
+    static final int[][] MULTIPLY = {
+        { 030, 210, 053, 211 },         // Load, multiply
+        { 030, 210, 052, 211 },         // Load, long multiply
+        { 056, 212, 054, 3 },           // Long divide, long shift left
+        { 050, 5, 040, 100 },           // Long shift right, loop
+    };
+    static final int[][] FLOAT = {
+        { 030, 220, 060, 221 },         // Load, add
+        { 063, 222, 064, 223 },         // Multiply, divide
+        { 061, 224, 040, 100 },         // Subtract, loop
+    };
+    static final int[][] BRANCH = {
+        { 022, 230, 030, 230 },         // Increment counter, load
+        { 003, 231, 042, 103 },         // Collate, jump if zero
+        { 041, 104, 000, 0 },           // Jump if negative (never)
+        { 000, 0, 044, 104 },           // Jump to second half
+        { 000, 0, 040, 100 },           // Loop
+    };
+
+    @Param({"integer", "multiply", "float", "branch"})
+    public String mix;
+
+    Computer computer;
+    CPU cpu;
+
+    @Setup
+    public void setUp() {
+        computer = new Computer();
+        computer.setRealTime(false);
+        cpu = computer.cpu;
+
+        int[][] code = mix.equals("multiply") ? MULTIPLY :
+                       mix.equals("float") ? FLOAT :
+                       mix.equals("branch") ? BRANCH : INTEGER;
+        for (int i = 0; i < code.length; i++) {
+            int[] w = code[i];
+            computer.core.write(100 + i, Word.asInstr(Instruction.asInstr(w[0], w[1]), 0,
+                                                      Instruction.asInstr(w[2], w[3])));
+        }
+
+        // Data for the loops
+        for (int i = 0; i < 6; i++)
+            computer.core.write(200 + i, 1234567L * (i+1));
+        computer.core.write(210, 123456789L);
+        computer.core.write(211, Word.asInteger(-98765L));
+        computer.core.write(212, 4321L);
+        computer.core.write(220, Word.asFloat(1.5));
+        computer.core.write(221, Word.asFloat(0.25));
+        computer.core.write(222, Word.asFloat(1.0001));
+        computer.core.write(223, Word.asFloat(1.0001));
+        computer.core.write(224, Word.asFloat(0.125));
+        computer.core.write(231, 1L);
+
+        // Jump to the start of the loop
+        cpu.setInstruction(Instruction.asInstr(040, 100));
+        cpu.obey();
+    }
+
+    @Benchmark
+    public int obey() {
+        cpu.obey();
+        return cpu.scr;
+    }
+
+    @Benchmark
+    public int runBlock() {
+        synchronized (cpu) {
+            cpu.runBlock();
+            return cpu.cycles;
+        }
+    }
+}
@@ -0,0 +1,105 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import elliott803.machine.Computer;
+import elliott803.machine.Word;
+
+/**
+ * JMH benchmarks for the floating point units and the Word floating point
+ * conversions.
+ *
+ * The 'fpu' parameter selects the standard (double) or the integer FPU.
+ *
+ * @author Baldwin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchFPU {
+
+    static final int COUNT = 1024;
+
+    @Param({"double", "integer"})
+    public String fpu;
+
+    FPU unit;
+    long[] n1, n2;
+    double[] d;
+    int index;
+
+    @Setup
+    public void setUp() {
+        Computer computer = new Computer(true);
+        unit = fpu.equals("integer") ? new IntegerFPU(computer) : new FPU(computer);
+        Random random = new Random(803);
+        n1 = new long[COUNT];
+        n2 = new long[COUNT];
+        d = new double[COUNT];
+        for (int i = 0; i < COUNT; i++) {
+            d[i] = (random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10);
+            n1[i] = Word.asFloat(d[i]);
+            n2[i] = Word.asFloat((random.nextDouble() - 0.5) * Math.pow(10, random.nextInt(20) - 10));
+        }
+    }
+
+    int next() {
+        index = (index + 1) & (COUNT-1);
+        return index;
+    }
+
+    @Benchmark
+    public long add() {
+        int i = next();
+        return unit.add(n1[i], n2[i]);
+    }
+
+    @Benchmark
+    public long sub() {
+        int i = next();
+        return unit.sub(n1[i], n2[i]);
+    }
+
+    @Benchmark
+    public long mul() {
+        int i = next();
+        return unit.mul(n1[i], n2[i]);
+    }
+
+    @Benchmark
+    public long div() {
+        int i = next();
+        return unit.div(n1[i], n2[i]);
+    }
+
+    @Benchmark
+    public long convert() {
+        int i = next();
+        return unit.convert(n1[i]);
+    }
+
+    @Benchmark
+    public double getDouble() {
+        return Word.getDouble(n1[next()]);
+    }
+
+    @Benchmark
+    public long asFloat() {
+        return Word.asFloat(d[next()]);
+    }
+}
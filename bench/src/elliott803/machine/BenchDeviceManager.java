@@ -0,0 +1,57 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JMH benchmarks for the control device dispatch in the DeviceManager.
+ *
+ * Reads from the random number generator are found after searching the plotter,
+ * reads and writes of an unused address search every device and find nothing.
+ *
+ * @author Baldwin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class BenchDeviceManager {
+
+    static final int RANDOM_ADDR = 8000;
+    static final int UNUSED_ADDR = 100;
+
+    DeviceManager devices;
+
+    @Setup
+    public void setUp() {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        devices = computer.devices;
+    }
+
+    @Benchmark
+    public long controlRead() {
+        return devices.controlRead(RANDOM_ADDR);
+    }
+
+    @Benchmark
+    public long controlReadUnused() {
+        return devices.controlRead(UNUSED_ADDR);
+    }
+
+    @Benchmark
+    public void controlWriteUnused() {
+        devices.controlWrite(UNUSED_ADDR, 0);
+    }
+}
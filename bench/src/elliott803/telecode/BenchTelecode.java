@@ -0,0 +1,81 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.telecode;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * JMH benchmarks for the telecode input and output streams.
+ *
+ * Each benchmark converts a complete block of text (an ALGOL program) to or from
+ * telecode, so the results are the time per block.
+ *
+ * @author Baldwin
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+public class BenchTelecode {
+
+    static final String[] LINES = {
+        "TRIG'",
+        "BEGIN REAL X, Y; INTEGER I;",
+        "   PRINT L??X DEGS4?X RADS5?SIN(X)S5?COS(X)L?;",
+        "   FOR I := 0 STEP 15 UNTIL 360 DO BEGIN",
+        "      X := I * 3.1415926536 / 180; Y := SIN(X) + COS(X);",
+        "      PRINT SAMELINE, ALIGNED(6,6), I, X, SIN(X), COS(X)",
+        "   END",
+        "END'",
+    };
+
+    String text;
+    byte[] tape;
+
+    @Setup
+    public void setUp() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < 64; i++) {
+            for (String line : LINES)
+                sb.append(line).append('\n');
+        }
+        text = sb.toString();
+
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new TelecodeInputStream(new StringReader(text)).write(out);
+        tape = out.toByteArray();
+    }
+
+    @Benchmark
+    public int readTelecode() throws IOException {
+        TelecodeInputStream in = new TelecodeInputStream(new StringReader(text));
+        int count = 0;
+        while (in.read() != -1)
+            count++;
+        return count;
+    }
+
+    @Benchmark
+    public int writeTelecode() throws IOException {
+        StringWriter sw = new StringWriter();
+        TelecodeOutputStream out = new TelecodeOutputStream(sw, false);
+        for (int i = 0; i < tape.length; i++)
+            out.write(tape[i]);
+        out.flush();
+        return sw.getBuffer().length();
+    }
+}
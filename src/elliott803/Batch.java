@@ -0,0 +1,341 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+import elliott803.hardware.PaperTapeStation;
+import elliott803.hardware.TapeDevice;
+import elliott803.machine.Computer;
+import elliott803.machine.Dump;
+import elliott803.machine.Word;
+import elliott803.telecode.TelecodeOutputStream;
+import elliott803.utils.Args;
+
+/**
+ * This is a batch interface to the Elliott 803 simulator.  It runs a list of jobs
+ * from a manifest file, several at a time, each on its own simulated computer.
+ *
+ * Usage:
+ *   Batch [options] manifest [summaryfile]
+ *
+ * where:
+ *   manifest: the list of jobs to run
+ *   summaryfile: output file for the job summary (defaults to System.out)
+ *
+ * options:
+ *   -threads count: number of jobs to run at once (defaults to the number of processors)
+ *   -timeout seconds: longest time any job can run (defaults to no limit)
+ *
+ * Each line of the manifest describes one job, as a job name followed by the same
+ * options and parameters as the Run command:
+ *
+ *   jobname [options] programtape [entryaddress]
+ *
+ * The -dump and -trace options are not allowed.  A value containing spaces, such
+ * as a -wordgen instruction, must be in double quotes.  Blank lines and lines
+ * starting with # are ignored.  Teletype output is discarded unless a -teletype
+ * file is given.  The ALGOL compiler is only started once for each -algol image,
+ * or -snapshot file, and every job using it carries on from a snapshot of the
+ * compiler waiting for its program.
+ *
+ * The summary has one line for each job, in manifest order, in CSV format:
+ *
+ *   job,status,wall_ms,cycles,instructions,output_chars
+ *
+ * where status is one of 'ok', 'input_wait' or 'output_wait' (the job ended waiting
+ * for a tape), 'timeout' or 'error'.  The command ends with a non-zero exit code if
+ * any job did not end with 'ok'.
+ *
+ * @author Baldwin
+ */
+public class Batch {
+
+    static final String HEADER = "job,status,wall_ms,cycles,instructions,output_chars";
+
+    public static void main(String[] args) throws Exception {
+        // Handle parameters
+        Args.Map options = Args.optionMap();
+        options.put("threads", "count");
+        options.put("timeout", "seconds");
+        Args parms = new Args("elliott803.Batch", "manifest [summaryfile]", args, options);
+
+        int threads = parms.getInteger("threads");
+        int timeout = parms.getInteger("timeout");
+        File manifestFile = parms.getInputFile(1);
+        File summaryFile = parms.getOutputFile(2);
+
+        // Check at least a manifest has been supplied
+        if (manifestFile == null)
+            parms.usage();
+        if (threads < 1)
+            threads = Runtime.getRuntime().availableProcessors();
+
+        // Read the whole manifest first, so any errors are found before any job runs
+        List<Job> jobs = readManifest(manifestFile);
+
+        // Run the jobs on a pool of worker threads.  A job that runs for too long
+        // is stopped from a timer thread.
+        ExecutorService workers = Executors.newFixedThreadPool(threads);
+        ScheduledExecutorService timer = Executors.newSingleThreadScheduledExecutor();
+        List<Future<Result>> results = new ArrayList<Future<Result>>();
+        for (Job job : jobs) {
+            job.timer = timer;
+            job.timeout = timeout;
+            results.add(workers.submit(job));
+        }
+
+        // Write the summary as the jobs finish
+        PrintStream summary = (summaryFile != null) ? new PrintStream(summaryFile) : System.out;
+        summary.println(HEADER);
+        boolean failed = false;
+        for (Future<Result> future : results) {
+            Result result = future.get();
+            summary.println(result);
+            summary.flush();
+            failed |= !result.status.equals(Result.OK);
+        }
+        if (summary != System.out)
+            summary.close();
+
+        workers.shutdown();
+        timer.shutdown();
+        if (failed)
+            System.exit(1);
+    }
+
+    /*
+     * Read the job manifest.  Each line is parsed in the same way as the Run
+     * command parameters.
+     */
+    static List<Job> readManifest(File file) throws IOException {
+        Args.Map options = Args.optionMap();
+        options.put("algol", "machineimage");
+        options.put("snapshot", "snapshotfile");
+        options.put("reader1", "inputtape");
+        options.put("reader2", "inputtape");
+        options.put("punch1", "outputtape");
+        options.put("punch2", "outputtape");
+        options.put("teletype", "outputfile");
+        options.put("wordgen", "+\"instruction\"");
+        options.put("press", "button");
+        options.put("encoding", "encoding");
+        options.put("ascii");
+        options.put("intfpu");
+
+        List<Job> jobs = new ArrayList<Job>();
+        LineNumberReader in = new LineNumberReader(new FileReader(file));
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            line = line.trim();
+            if (line.length() == 0 || line.startsWith("#"))
+                continue;
+
+            String name = file.getName() + " line " + in.getLineNumber() + ":";
+            Args parms = new Args(name, "jobname programtape [entryaddress]", split(line), options);
+
+            Job job = new Job();
+            job.name = parms.getParameter(1);
+            job.programFile = parms.getInputFile(2);
+            job.entryAddr = parms.getInteger(3);
+            job.inputFile1 = parms.getInputFile("reader1");
+            job.inputFile2 = parms.getInputFile("reader2");
+            job.outputFile1 = parms.getOutputFile("punch1");
+            job.outputFile2 = parms.getOutputFile("punch2");
+            job.outputFile3 = parms.getOutputFile("teletype");
+            job.button = parms.getInteger("press");
+            job.encoding = parms.getOption("encoding");
+            job.useASCII = parms.getFlag("ascii");
+            job.intFPU = parms.getFlag("intfpu");
+            if (job.programFile == null)
+                parms.usage();
+
+            String wgInstruction = parms.getOption("wordgen");
+            if (wgInstruction != null)
+                job.wordgen = Word.parseInstr(wgInstruction);
+
+            // The compiler is only started once for each image (or snapshot file),
+            // and all its jobs carry on from the same snapshot
+            File algolFile = parms.getInputFile("algol");
+            if (algolFile != null) {
+                job.compiler = Run.algolSnapshot(algolFile, parms.getOutputFile("snapshot"));
+                if (job.compiler == null)
+                    System.exit(1);
+            }
+            jobs.add(job);
+        }
+        in.close();
+        return jobs;
+    }
+
+    // Split a manifest line into words, allowing for double quoted values
+    static String[] split(String line) {
+        List<String> words = new ArrayList<String>();
+        StringBuilder word = null;
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char ch = line.charAt(i);
+            if (ch == '"') {
+                quoted = !quoted;
+                if (word == null)
+                    word = new StringBuilder();
+            } else if (Character.isWhitespace(ch) && !quoted) {
+                if (word != null)
+                    words.add(word.toString());
+                word = null;
+            } else {
+                if (word == null)
+                    word = new StringBuilder();
+                word.append(ch);
+            }
+        }
+        if (word != null)
+            words.add(word.toString());
+        return words.toArray(new String[words.size()]);
+    }
+
+    /*
+     * A job from the manifest, run on its own computer
+     */
+    static class Job implements Callable<Result> {
+        String name;
+        File programFile;
+        File inputFile1, inputFile2;
+        File outputFile1, outputFile2, outputFile3;
+        Dump compiler;
+        long wordgen;
+        int entryAddr;
+        int button;
+        String encoding;
+        boolean useASCII;
+        boolean intFPU;
+
+        ScheduledExecutorService timer;
+        int timeout;
+        volatile boolean timedOut;
+
+        public Result call() {
+            Result result = new Result(name);
+            final Computer computer = new Computer();
+            computer.setRealTime(false);
+            computer.setIntegerFPU(intFPU);
+            Benchmark.CountingStream teletype = null;
+
+            ScheduledFuture<?> stopper = null;
+            long start = System.nanoTime();
+            try {
+                // Open the input/output streams
+                InputStream programTape = (compiler != null) ? Run.openTape(programFile, encoding)
+                                                             : new FileInputStream(programFile);
+                InputStream inputTape1 = (inputFile1 != null) ? Run.openTape(inputFile1, encoding) : null;
+                InputStream inputTape2 = (inputFile2 != null) ? Run.openTape(inputFile2, encoding) : null;
+
+                OutputStream outputTeletype = null;
+                if (outputFile3 != null)
+                    outputTeletype = new TelecodeOutputStream(new FileWriter(outputFile3), useASCII);
+                teletype = new Benchmark.CountingStream(outputTeletype);
+                if (outputFile1 != null)
+                    computer.pts.setPunchTape(PaperTapeStation.PUNCH1, new FileOutputStream(outputFile1));
+                if (outputFile2 != null)
+                    computer.pts.setPunchTape(PaperTapeStation.PUNCH2, new FileOutputStream(outputFile2));
+                computer.pts.setPunchTape(PaperTapeStation.TELETYPE, teletype);
+                computer.console.setWordGen(wordgen);
+
+                // The CPU is stopped repeatedly once the time is up, as running a
+                // program can take several separate runs of the CPU
+                if (timeout > 0) {
+                    stopper = timer.scheduleAtFixedRate(new Runnable() {
+                        public void run() {
+                            timedOut = true;
+                            computer.cpu.stop();
+                        }
+                    }, timeout*1000L, 100, TimeUnit.MILLISECONDS);
+                }
+
+                // Load and run the program
+                if (compiler != null)
+                    Run.runAlgolSnapshot(computer, compiler, programTape, inputTape1, inputTape2, false);
+                else
+                    Run.runProgram(computer, programTape, entryAddr, inputTape1, inputTape2, button, false);
+
+                result.status = Result.OK;
+                for (TapeDevice device : computer.pts.punches) {
+                    if (device.deviceBusy())
+                        result.status = Result.OUTPUT_WAIT;
+                }
+                for (TapeDevice device : computer.pts.readers) {
+                    if (device.deviceBusy())
+                        result.status = Result.INPUT_WAIT;
+                }
+            } catch (Exception e) {
+                System.err.println(name + ": " + e);
+                result.status = Result.ERROR;
+            }
+            long end = System.nanoTime();
+
+            if (stopper != null)
+                stopper.cancel(false);
+            if (timedOut)
+                result.status = Result.TIMEOUT;
+
+            // Close all the tapes
+            for (int i = 0; i < computer.pts.readers.length; i++)
+                computer.pts.setReaderTape(i, null);
+            for (int i = 0; i < computer.pts.punches.length; i++)
+                computer.pts.setPunchTape(i, null);
+
+            result.nanos = end - start;
+            result.cycles = computer.cpu.getCycleCount();
+            result.instructions = computer.cpu.getInstructionCount();
+            result.output = (teletype != null) ? teletype.count : 0;
+            return result;
+        }
+    }
+
+    /*
+     * Result of one job
+     */
+    static class Result {
+        static final String OK = "ok";
+        static final String INPUT_WAIT = "input_wait";
+        static final String OUTPUT_WAIT = "output_wait";
+        static final String TIMEOUT = "timeout";
+        static final String ERROR = "error";
+
+        String job;
+        String status;
+        long nanos;
+        long cycles;
+        long instructions;
+        long output;
+
+        Result(String job) {
+            this.job = job;
+        }
+
+        public String toString() {
+            return job + "," + status + "," + nanos/1000000 + "," + cycles + ","
+                    + instructions + "," + output;
+        }
+    }
+}
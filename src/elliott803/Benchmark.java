@@ -0,0 +1,373 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.LineNumberReader;
+import java.io.OutputStream;
+import java.io.PrintStream;
+import java.io.StringReader;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import elliott803.hardware.PaperTapeStation;
+import elliott803.machine.Computer;
+import elliott803.machine.Dump;
+import elliott803.telecode.TelecodeInputStream;
+import elliott803.utils.Args;
+import elliott803.utils.Assembler;
+
+/**
+ * This is a benchmark suite made from the sample programs.  Each assembler sample
+ * is assembled and run, and each ALGOL sample is compiled and run using the
+ * pre-loaded ALGOL compiler machine image.  Nothing is displayed, so the CPU runs
+ * in the same way as for the Run command.
+ *
+ * Usage:
+ *   Benchmark [options] [reportfile]
+ *
+ * where:
+ *   reportfile: output file for the report (defaults to System.out)
+ *
+ * options:
+ *   -samples directory: the samples directory (defaults to 'samples')
+ *   -algol machineimage: the ALGOL compiler image (defaults to 'machines/algol.803'
+ *                        in the samples directory)
+ *   -encoding encoding: character encoding of the ALGOL sources (defaults to ISO-8859-1)
+ *   -repeat count: number of times to run each job, the fastest run is reported
+ *   -baseline reportfile: an earlier report to compare against
+ *   -tolerance percent: allowed drop in speed against the baseline (defaults to 10)
+ *   -nochain: return to the main CPU loop after every block of instructions, to
+ *             measure the gain from chaining hot blocks together
+ *
+ * The report has one line for each job, and a final total line, in CSV format:
+ *
+ *   job,wall_ms,cycles,instructions,instructions_per_sec,output_chars
+ *
+ * If a baseline is given, a job that is slower than the baseline by more than the
+ * tolerance is reported as a regression and the command ends with a non-zero exit
+ * code.  A job that obeys a different number of instructions is also reported, as
+ * this usually means the simulation of some instruction has changed.
+ *
+ * @author Baldwin
+ */
+public class Benchmark {
+
+    // Assembler samples as { source file, entry address, reader 2 tape }.  The
+    // 'music' and 'random' samples are not included as they never end.
+    static final String[][] ASSEMBLER_JOBS = {
+        { "charset.a1", "-1", null },
+        { "hello1.a1", "-1", null },
+        { "hello2.a1", "7", null },
+        { "print.a1", "-1", "algol/hello.algol" },
+    };
+
+    // Data tapes for the ALGOL samples that read from reader 2
+    static final String[][] ALGOL_DATA = {
+        { "factorial4", "1000\n" },
+        { "pi4", "1000\n" },
+    };
+
+    static final String[] ALGOL_DIRS = { "algol", "extra" };
+
+    static boolean chaining;
+
+    // ALGOL samples that are not included.  The 'sort' sample sorts numbers read
+    // from the random number device, so it obeys a different number of
+    // instructions on every run.
+    static final String[] ALGOL_EXCLUDED = { "sort.algol" };
+
+    public static void main(String[] args) throws Exception {
+        // Handle parameters
+        Args.Map options = Args.optionMap();
+        options.put("samples", "directory");
+        options.put("algol", "machineimage");
+        options.put("encoding", "encoding");
+        options.put("repeat", "count");
+        options.put("baseline", "reportfile");
+        options.put("tolerance", "percent");
+        options.put("nochain");
+        Args parms = new Args("elliott803.Benchmark", "[reportfile]", args, options);
+
+        String samples = parms.getOption("samples");
+        File algolFile = parms.getInputFile("algol");
+        String encoding = parms.getOption("encoding");
+        int repeat = parms.getInteger("repeat");
+        File baselineFile = parms.getInputFile("baseline");
+        int tolerance = parms.getInteger("tolerance");
+        chaining = !parms.getFlag("nochain");
+        File reportFile = parms.getOutputFile(1);
+
+        File samplesDir = new File((samples != null) ? samples : "samples");
+        if (!samplesDir.isDirectory())
+            parms.usage();
+        if (algolFile == null)
+            algolFile = new File(samplesDir, "machines/algol.803");
+        if (encoding == null)
+            encoding = "ISO-8859-1";
+        if (repeat < 1)
+            repeat = 1;
+        if (tolerance < 0)
+            tolerance = 10;
+
+        // Build the list of jobs
+        List<Job> jobs = new ArrayList<Job>();
+        for (String[] job : ASSEMBLER_JOBS) {
+            File source = new File(samplesDir, "assembler/" + job[0]);
+            File reader2 = (job[2] != null) ? new File(samplesDir, job[2]) : null;
+            jobs.add(new AssemblerJob(source, Integer.parseInt(job[1]), reader2));
+        }
+        Dump algol = Dump.readDump(algolFile);
+        if (algol == null) {
+            System.err.println("*** Unable to read ALGOL compiler image: " + algolFile);
+            System.exit(1);
+        }
+        for (String dir : ALGOL_DIRS) {
+            File[] files = new File(samplesDir, dir).listFiles();
+            if (files == null)
+                continue;
+            Arrays.sort(files);
+            for (File source : files) {
+                if (source.getName().endsWith(".algol")
+                        && !Arrays.asList(ALGOL_EXCLUDED).contains(source.getName()))
+                    jobs.add(new AlgolJob(source, encoding, algol));
+            }
+        }
+
+        // Run each job, keeping the fastest run
+        PrintStream report = (reportFile != null) ? new PrintStream(reportFile) : System.out;
+        report.println(Result.HEADER);
+        Result total = new Result("total");
+        List<Result> results = new ArrayList<Result>();
+        for (Job job : jobs) {
+            Result best = null;
+            for (int i = 0; i < repeat; i++) {
+                Result result = job.run();
+                if (best == null || result.nanos < best.nanos)
+                    best = result;
+            }
+            report.println(best);
+            results.add(best);
+            total.add(best);
+        }
+        report.println(total);
+        results.add(total);
+        if (report != System.out)
+            report.close();
+
+        // Compare against the baseline if there is one
+        if (baselineFile != null) {
+            Map<String,Result> baseline = Result.readReport(baselineFile);
+            boolean regressed = false;
+            for (Result result : results) {
+                Result base = baseline.get(result.job);
+                if (base == null)
+                    continue;
+                if (result.getRate() < base.getRate()*(100-tolerance)/100) {
+                    System.err.println("*** Regression: " + result.job + " " + result.getRate()
+                            + " instructions/sec, baseline " + base.getRate());
+                    regressed = true;
+                }
+                if (result.instructions != base.instructions) {
+                    System.err.println("*** Changed: " + result.job + " " + result.instructions
+                            + " instructions, baseline " + base.instructions);
+                }
+            }
+            if (regressed)
+                System.exit(1);
+        }
+    }
+
+    /*
+     * A benchmark job.  Each run uses a new computer, with the teletype output
+     * counted and discarded.
+     */
+    static abstract class Job {
+        String name;
+
+        Job(String name) {
+            this.name = name;
+        }
+
+        Result run() throws IOException {
+            Computer computer = new Computer();
+            computer.setRealTime(false);
+            computer.setChaining(chaining);
+            CountingStream teletype = new CountingStream(null);
+            computer.pts.setPunchTape(PaperTapeStation.TELETYPE, teletype);
+
+            long start = System.nanoTime();
+            run(computer);
+            long end = System.nanoTime();
+
+            Result result = new Result(name);
+            result.nanos = end - start;
+            result.cycles = computer.cpu.getCycleCount();
+            result.instructions = computer.cpu.getInstructionCount();
+            result.output = teletype.count;
+            return result;
+        }
+
+        abstract void run(Computer computer) throws IOException;
+    }
+
+    /*
+     * Assemble a sample program and run it in the same way as the Run command.
+     */
+    static class AssemblerJob extends Job {
+        byte[] tape;
+        int entry;
+        File reader2;
+
+        AssemblerJob(File source, int entry, File reader2) throws IOException {
+            super(source.getName());
+            ByteArrayOutputStream output = new ByteArrayOutputStream();
+            LineNumberReader input = new LineNumberReader(new FileReader(source));
+            new Assembler(input, output).run();
+            input.close();
+            this.tape = output.toByteArray();
+            this.entry = entry;
+            this.reader2 = reader2;
+        }
+
+        void run(Computer computer) throws IOException {
+            Run.runProgram(computer, new ByteArrayInputStream(tape), entry, null,
+                    (reader2 != null) ? Run.openTape(reader2, null) : null, -1, false);
+        }
+    }
+
+    /*
+     * Compile and run an ALGOL program with the pre-loaded compiler image, in
+     * the same way as the Run command.
+     */
+    static class AlgolJob extends Job {
+        Dump algol;
+        String source;
+        String data;
+
+        AlgolJob(File file, String encoding, Dump algol) throws IOException {
+            super(file.getName());
+            this.algol = algol;
+
+            // Read the whole source now so file access is not part of the timing
+            StringBuilder sb = new StringBuilder();
+            BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), encoding));
+            for (int c = in.read(); c != -1; c = in.read())
+                sb.append((char)c);
+            in.close();
+            source = sb.toString();
+
+            for (String[] d : ALGOL_DATA) {
+                if (file.getName().equals(d[0] + ".algol"))
+                    data = d[1];
+            }
+        }
+
+        void run(Computer computer) throws IOException {
+            Run.runAlgol(computer, algol, new TelecodeInputStream(new StringReader(source)), null,
+                    (data != null) ? new TelecodeInputStream(new StringReader(data)) : null, false);
+        }
+    }
+
+    /*
+     * Result of one job
+     */
+    static class Result {
+        static final String HEADER = "job,wall_ms,cycles,instructions,instructions_per_sec,output_chars";
+
+        String job;
+        long nanos;
+        long cycles;
+        long instructions;
+        long rate = -1;
+        long output;
+
+        Result(String job) {
+            this.job = job;
+        }
+
+        void add(Result result) {
+            nanos += result.nanos;
+            cycles += result.cycles;
+            instructions += result.instructions;
+            output += result.output;
+        }
+
+        long getRate() {
+            if (rate == -1)
+                rate = (nanos > 0) ? (long)(instructions*1.0e9/nanos) : 0;
+            return rate;
+        }
+
+        public String toString() {
+            return job + "," + nanos/1000000 + "," + cycles + "," + instructions + ","
+                    + getRate() + "," + output;
+        }
+
+        // Read an earlier report
+        static Map<String,Result> readReport(File file) throws IOException {
+            Map<String,Result> results = new HashMap<String,Result>();
+            BufferedReader in = new BufferedReader(new FileReader(file));
+            for (String line = in.readLine(); line != null; line = in.readLine()) {
+                String[] f = line.split(",");
+                if (f.length < 6 || line.equals(HEADER))
+                    continue;
+                try {
+                    Result result = new Result(f[0]);
+                    result.nanos = Long.parseLong(f[1])*1000000;
+                    result.cycles = Long.parseLong(f[2]);
+                    result.instructions = Long.parseLong(f[3]);
+                    result.rate = Long.parseLong(f[4]);
+                    result.output = Long.parseLong(f[5]);
+                    results.put(result.job, result);
+                } catch (NumberFormatException e) {
+                    System.err.println(e);
+                }
+            }
+            in.close();
+            return results;
+        }
+    }
+
+    /*
+     * Output stream that counts the characters written, passing them on to
+     * another stream if there is one.  Also used by the Batch command.
+     */
+    static class CountingStream extends OutputStream {
+        OutputStream out;
+        long count;
+
+        CountingStream(OutputStream out) {
+            this.out = out;
+        }
+
+        public void write(int b) throws IOException {
+            count++;
+            if (out != null)
+                out.write(b);
+        }
+
+        public void flush() throws IOException {
+            if (out != null)
+                out.flush();
+        }
+
+        public void close() throws IOException {
+            if (out != null)
+                out.close();
+        }
+    }
+}
@@ -39,6 +39,7 @@ import elliott803.view.MachineImage;
  *   -look lookAndFeel: the Java UI look-and-feel (defaults to system look and feel)
  *   -volume volume: the initial volume (0 to 100, 0 means no sound)
  *   -sound sampleRate:bufferSize: sound sample rate and buffer size (experimental)
+ *   -intfpu: use integer floating point arithmetic
  *   -debug: print diagnostic information
  *
  * @author Baldwin
@@ -51,6 +52,7 @@ public class Main implements Runnable {
         options.put("look", "lookAndFeel");
         options.put("volume", "volume");
         options.put("sound", "sampleRate:bufferSize");
+        options.put("intfpu");
         options.put("debug");
         Args parms = new Args("elliott803.Main", "[machine]", args, options);
 
@@ -84,6 +86,7 @@ public class Main implements Runnable {
 
         // Create a new 803 simulation and view and start the simulator thread
         Computer computer = new Computer(volume);
+        computer.setIntegerFPU(parms.getFlag("intfpu"));
         ComputerView view = new ComputerView(computer);
         computer.start();
 
@@ -10,12 +10,22 @@ import java.io.FileInputStream;
 import java.io.FileOutputStream;
 import java.io.FileReader;
 import java.io.FileWriter;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.InputStreamReader;
 import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 
+import elliott803.hardware.Intercept;
 import elliott803.hardware.PaperTapeStation;
 import elliott803.hardware.TapeDevice;
 import elliott803.machine.Computer;
+import elliott803.machine.Dump;
+import elliott803.machine.FlightRecorder;
+import elliott803.machine.Regions;
+import elliott803.machine.TraceFilter;
 import elliott803.machine.Word;
 import elliott803.telecode.Telecode;
 import elliott803.telecode.TelecodeInputStream;
@@ -33,6 +43,11 @@ import elliott803.utils.Args;
  *   entrypoint: address to enter after tape is loaded (ignored for a self-triggering tape)
  *
  * options:
+ *   -algol machineimage: compile and run programtape as an ALGOL program, using the
+ *                        pre-loaded ALGOL compiler image
+ *   -snapshot snapshotfile: with -algol, start from a snapshot of the compiler waiting
+ *                           for the program, taking the snapshot first if the file
+ *                           does not exist or was taken from a different image
  *   -reader1 inputtape: tape to load in reader 1 (after program tape is read)
  *   -reader2 inputtape: tape to load in reader 2
  *   -punch1 outputtape: output tape file for punch 1
@@ -40,17 +55,38 @@ import elliott803.utils.Args;
  *   -teletype outputfile: output file for teletype (defaults to System.out)
  *   -wordgen instruction: instruction pair to set on the word generator
  *   -press button: word generator button to press on a console wait
+ *   -encoding encoding: character encoding of any text input tapes (defaults to the
+ *                       platform encoding)
  *   -ascii: use only US-ASCII character set
+ *   -intfpu: use integer floating point arithmetic
+ *   -fastload: load binary tapes read by the initial instructions straight into store
+ *   -intercept: run known ALGOL library routines directly in Java
+ *   -checkintercept: as -intercept, but check each call against the real routine
  *   -dump: produce a system dump on exit
  *   -trace: produce a full instruction trace
+ *   -tracefilter filter: produce an instruction trace limited by a filter, such as
+ *                        "addr=100-199 group=4 sample=10" (see TraceFilter)
+ *   -profile: produce an execution profile of the whole run
+ *   -callgraph: produce a call graph profile of the subroutines called in the whole run
+ *   -coverage: record the instructions obeyed and jumps taken in the whole run
+ *   -sample interval: produce a sampled profile of the whole run, sampling every
+ *                     'interval' microseconds (0 for the default of 1000)
+ *   -recorder events: write the flight recorder on any of a comma separated list
+ *                     of events: reset, overflow, busy, stop or all
  *
  * @author Baldwin
  */
 public class Run {
 
+    static final int ALGOL_START = 7;       // Address to start the ALGOL compiler
+    static final int FUNCTION1 = 1;         // Function 1 '40' button
+    static final int FUNCTION2 = 21;        // Function 2 '40' button
+
     public static void main(String[] args) throws Exception {
         // Handle parameters
         Args.Map options = Args.optionMap();
+        options.put("algol", "machineimage");
+        options.put("snapshot", "snapshotfile");
         options.put("reader1", "inputtape");
         options.put("reader2", "inputtape");
         options.put("punch1", "outputtape");
@@ -58,11 +94,24 @@ public class Run {
         options.put("teletype", "outputfile");
         options.put("wordgen", "+\"instruction\"");
         options.put("press", "button");
+        options.put("encoding", "encoding");
         options.put("ascii");
+        options.put("intfpu");
+        options.put("fastload");
+        options.put("intercept");
+        options.put("checkintercept");
         options.put("dump");
         options.put("trace");
+        options.put("tracefilter", "filter");
+        options.put("profile");
+        options.put("callgraph");
+        options.put("coverage");
+        options.put("sample", "interval");
+        options.put("recorder", "events");
         Args parms = new Args("elliott803.Run", "programtape [entryaddress]", args, options);
 
+        File algolFile = parms.getInputFile("algol");
+        File snapshotFile = parms.getOutputFile("snapshot");
         File inputFile1 = parms.getInputFile("reader1");
         File inputFile2 = parms.getInputFile("reader2");
         File outputFile1 = parms.getOutputFile("punch1");
@@ -70,9 +119,21 @@ public class Run {
         File outputFile3 = parms.getOutputFile("teletype");
         String wgInstruction = parms.getOption("wordgen");
         int button = parms.getInteger("press");
+        String encoding = parms.getOption("encoding");
         boolean instrTrace = parms.getFlag("trace");
         boolean dumpOnExit = parms.getFlag("dump");
+        boolean profile = parms.getFlag("profile");
+        boolean callGraph = parms.getFlag("callgraph");
+        boolean coverage = parms.getFlag("coverage");
+        boolean sample = parms.getFlag("sample");
+        int sampleInterval = parms.getInteger("sample");
         boolean useASCII = parms.getFlag("ascii");
+        boolean intFPU = parms.getFlag("intfpu");
+        boolean fastLoad = parms.getFlag("fastload");
+        boolean checkIntercept = parms.getFlag("checkintercept");
+        boolean intercept = parms.getFlag("intercept") || checkIntercept;
+        String recorderEvents = parms.getOption("recorder");
+        String filterText = parms.getOption("tracefilter");
 
         File programFile = parms.getInputFile(1);
         int entryAddr = parms.getInteger(2);
@@ -80,24 +141,47 @@ public class Run {
         // Check at least a program tape has been supplied
         if (programFile == null)
             parms.usage();
+        TraceFilter filter = null;
+        if (filterText != null) {
+            try {
+                filter = new TraceFilter(filterText);
+                instrTrace = true;
+            } catch (IllegalArgumentException e) {
+                System.err.println(e);
+                parms.usage();
+            }
+        }
+        int recorderTriggers = 0;
+        if (recorderEvents != null) {
+            recorderTriggers = FlightRecorder.parseTriggers(recorderEvents);
+            if (recorderTriggers == -1)
+                parms.usage();
+        }
 
-        // Open any input/output streams
-        InputStream programTape = new FileInputStream(programFile);
+        // Read the ALGOL compiler image, or a snapshot of the started compiler, if needed
+        Dump compiler = null, snapshot = null;
+        if (algolFile != null && snapshotFile != null) {
+            snapshot = algolSnapshot(algolFile, snapshotFile);
+            if (snapshot == null)
+                System.exit(1);
+        } else if (algolFile != null) {
+            compiler = Dump.readDump(algolFile);
+            if (compiler == null)
+                System.exit(1);
+        }
 
-        InputStream inputTape1 = null, inputTape2 = null;
-        if (inputFile1 != null) {
-            if (Telecode.isTelecode(inputFile1))
-                inputTape1 = new FileInputStream(inputFile1);
-            else
-                inputTape1 = new TelecodeInputStream(new FileReader(inputFile1));
-        }    
+        // Open any input/output streams, an ALGOL program can be a text file
+        InputStream programTape = null;
+        if (compiler != null || snapshot != null)
+            programTape = openTape(programFile, encoding);
+        else
+            programTape = new FileInputStream(programFile);
 
-        if (inputFile2 != null) {
-            if (Telecode.isTelecode(inputFile2))
-                inputTape2 = new FileInputStream(inputFile2);
-            else
-                inputTape2 = new TelecodeInputStream(new FileReader(inputFile2));
-        }    
+        InputStream inputTape1 = null, inputTape2 = null;
+        if (inputFile1 != null)
+            inputTape1 = openTape(inputFile1, encoding);
+        if (inputFile2 != null)
+            inputTape2 = openTape(inputFile2, encoding);
 
         OutputStream outputTape1 = null, outputTape2 = null, outputTeletype = null;
         if (outputFile1 != null)
@@ -115,16 +199,80 @@ public class Run {
         if (wgInstruction != null)
             wordgen = Word.parseInstr(wgInstruction);
 
-        // Create computer and set initial program tape and output tapes
+        // Create computer and set output tapes
         Computer computer = new Computer();
         computer.setRealTime(false);
-        computer.pts.setReaderTape(PaperTapeStation.READER1, programTape);
+        computer.setIntegerFPU(intFPU);
+        computer.setFastLoad(fastLoad);
+        computer.setIntercepts(intercept, checkIntercept);
+        computer.setRecorder(FlightRecorder.DEFAULT_SIZE, recorderTriggers);
+        computer.setTraceFilter(filter);
         computer.pts.setPunchTape(PaperTapeStation.PUNCH1, outputTape1);
         computer.pts.setPunchTape(PaperTapeStation.PUNCH2, outputTape2);
         computer.pts.setPunchTape(PaperTapeStation.TELETYPE, outputTeletype);
-        
-        // Set console options
         computer.console.setWordGen(wordgen);
+
+        // Load and run the program
+        if (profile)
+            computer.profileStart();
+        if (callGraph)
+            computer.callGraphStart();
+        if (coverage)
+            computer.coverageStart();
+        if (sample)
+            computer.samplerStart(sampleInterval);
+        if (snapshot != null)
+            runAlgolSnapshot(computer, snapshot, programTape, inputTape1, inputTape2, instrTrace);
+        else if (compiler != null)
+            runAlgol(computer, compiler, programTape, inputTape1, inputTape2, instrTrace);
+        else
+            runProgram(computer, programTape, entryAddr, inputTape1, inputTape2, button, instrTrace);
+        if (profile)
+            computer.profileStop();
+        if (callGraph)
+            computer.callGraphStop();
+        if (coverage)
+            computer.coverageStop();
+        if (sample)
+            computer.samplerStop();
+
+        for (TapeDevice device : computer.pts.readers) {
+            if (device.deviceBusy())
+                System.out.println("*** Waiting for input: READER " + device.id);
+        }
+        for (TapeDevice device : computer.pts.punches) {
+            if (device.deviceBusy())
+                System.out.println("*** Waiting for output: PUNCH " + device.id);
+        }
+
+        // Summarise any profiling regions used by the program
+        List<Regions.Region> regions = computer.getRegions();
+        if (regions != null) {
+            System.out.println("*** Profiling regions:");
+            Regions.print(System.out, regions);
+        }
+
+        // Summarise any library routines that were intercepted
+        List<Intercept> intercepts = computer.cpu.getIntercepts();
+        if (intercepts != null) {
+            System.out.println("*** Intercepted routines:");
+            Intercept.print(System.out, intercepts);
+        }
+
+        // Generate dump on exit if required
+        if (dumpOnExit) {
+            computer.dump();
+        }
+    }
+
+    /*
+     * Load a program tape with the initial instructions and run it until it stops
+     * or waits, loading the data tapes and pressing a button on any console wait.
+     * Also used by the Benchmark and Batch commands.
+     */
+    public static void runProgram(Computer computer, InputStream programTape, int entryAddr,
+            InputStream inputTape1, InputStream inputTape2, int button, boolean instrTrace) {
+        computer.pts.setReaderTape(PaperTapeStation.READER1, programTape);
         computer.console.setManualData(button > 0);
 
         // Jump to the initial instructions to load the program
@@ -159,19 +307,113 @@ public class Run {
 
         if (instrTrace)
             computer.traceStop();
+    }
 
-        for (TapeDevice device : computer.pts.readers) {
-            if (device.deviceBusy())
-                System.out.println("*** Waiting for input: READER " + device.id);
-        }
-        for (TapeDevice device : computer.pts.punches) {
-            if (device.deviceBusy())
-                System.out.println("*** Waiting for output: PUNCH " + device.id);
-        }
+    /*
+     * Compile and run an ALGOL program in the same way as an operator would, using
+     * a pre-loaded compiler image.  The compiler is started at 7 and Function 1
+     * reads and compiles the program, which ends in a data wait.  The data tapes
+     * are then loaded and Function 2 runs the program.
+     */
+    public static void runAlgol(Computer computer, Dump compiler, InputStream programTape,
+            InputStream inputTape1, InputStream inputTape2, boolean instrTrace) {
+        startAlgol(computer, compiler);
+        compileAlgol(computer, programTape, inputTape1, inputTape2, instrTrace);
+    }
 
-        // Generate dump on exit if required
-        if (dumpOnExit) {
-            computer.dump();
+    /*
+     * Compile and run an ALGOL program in the same way, but carrying on from a
+     * snapshot of the compiler that has already been started.  The results are
+     * the same as runAlgol, apart from anything, such as a profile, that only
+     * covers the run itself and so misses the compiler starting up.
+     */
+    public static void runAlgolSnapshot(Computer computer, Dump snapshot, InputStream programTape,
+            InputStream inputTape1, InputStream inputTape2, boolean instrTrace) {
+        computer.restore(snapshot);
+        compileAlgol(computer, programTape, inputTape1, inputTape2, instrTrace);
+    }
+
+    // Start the compiler, which waits for the program tape
+    static void startAlgol(Computer computer, Dump compiler) {
+        computer.cpu.reset();
+        computer.core.restore(compiler);
+        computer.runInstructions(ALGOL_START);
+    }
+
+    static void compileAlgol(Computer computer, InputStream programTape,
+            InputStream inputTape1, InputStream inputTape2, boolean instrTrace) {
+        computer.pts.setReaderTape(PaperTapeStation.READER1, programTape);
+        computer.console.toggleWordGenBit(40 - FUNCTION1);
+        computer.runInstructions();
+
+        // Now in the data wait
+        if (inputTape1 != null)
+            computer.pts.setReaderTape(PaperTapeStation.READER1, inputTape1);
+        if (inputTape2 != null)
+            computer.pts.setReaderTape(PaperTapeStation.READER2, inputTape2);
+
+        if (instrTrace)
+            computer.traceStart();
+
+        computer.console.toggleWordGenBit(40 - FUNCTION2);
+        computer.runInstructions();
+
+        if (instrTrace)
+            computer.traceStop();
+    }
+
+    /*
+     * Snapshots of the ALGOL compiler, started and waiting for the program tape.
+     * Each snapshot is only taken once and is kept for any later jobs in the same
+     * process.  If a snapshot file is given the snapshot is read from it, or
+     * written to it if it does not exist yet, so later runs can also use it.
+     *
+     * Snapshots are matched to the compiler image by its checksum.  A snapshot
+     * file taken from a different image (or from an earlier version of the same
+     * image) is taken again and the file replaced.
+     */
+    static Map<String,Dump> snapshots = new HashMap<String,Dump>();
+
+    public static synchronized Dump algolSnapshot(File algolFile, File snapshotFile) throws IOException {
+        long source = Dump.checksum(algolFile);
+        String key = ((snapshotFile != null) ? snapshotFile.getCanonicalPath() : algolFile.getCanonicalPath())
+                + ":" + Long.toHexString(source);
+        Dump snapshot = snapshots.get(key);
+        if (snapshot == null) {
+            if (snapshotFile != null && snapshotFile.exists()) {
+                snapshot = Dump.readSnapshot(snapshotFile);
+                if (snapshot == null)
+                    return null;
+                if (snapshot.source != source)
+                    snapshot = null;
+            }
+            if (snapshot == null) {
+                Dump compiler = Dump.readDump(algolFile);
+                if (compiler != null) {
+                    Computer computer = new Computer();
+                    computer.setRealTime(false);
+                    startAlgol(computer, compiler);
+                    snapshot = new Dump(computer);
+                    snapshot.source = source;
+                    if (snapshotFile != null)
+                        snapshot.writeSnapshot(snapshotFile);
+                }
+            }
+            if (snapshot != null)
+                snapshots.put(key, snapshot);
         }
+        return snapshot;
+    }
+
+    /*
+     * Open an input tape, either a binary tape or a text file to be converted
+     * to telecode.  A null encoding means the platform encoding.
+     */
+    public static InputStream openTape(File file, String encoding) throws IOException {
+        if (Telecode.isTelecode(file))
+            return new FileInputStream(file);
+        if (encoding == null)
+            return new TelecodeInputStream(new FileReader(file));
+        return new TelecodeInputStream(new InputStreamReader(new FileInputStream(file), encoding));
     }
 }
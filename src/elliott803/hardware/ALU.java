@@ -1,12 +1,10 @@
 /**
  * Elliott Model 803B Simulator
  *
- * (C) Copyright Tim Baldwin 2009
+ * (C) Copyright Tim Baldwin 2009, 2013
  */
 package elliott803.hardware;
 
-import java.math.BigInteger;
-
 import elliott803.machine.Computer;
 import elliott803.machine.Word;
 
@@ -14,6 +12,10 @@ import elliott803.machine.Word;
  * This class is the Arithmetic and Logic unit.  It handles all the basic integer
  * arithmetic and logical operations.
  *
+ * Double length values are held as a pair of longs: a signed high part and a 38 bit
+ * unsigned low part, in the same way as the accumulator and auxiliary register.
+ * This means all the double length arithmetic can be done with plain Java longs.
+ *
  * @author Baldwin
  */
 public class ALU {
@@ -23,6 +25,10 @@ public class ALU {
     boolean overflow = false;                 // Overflow indicator
     long extension = 0;                       // Double length result extension
 
+    long hi, lo;                              // Double length intermediate result
+
+    static final long LOW_MASK = 0x7FFFF;     // 19 bits (half of 38 bits)
+
     public ALU(Computer computer) {
         this.computer = computer;
     }
@@ -75,16 +81,16 @@ public class ALU {
 
     public long mul(long n1, long n2) {
         // Can do a fast multiply for small numbers otherwise, if the result could
-        // overflow a 64 bit long, we have to use BigInteger arithmetic and extract
-        // a single length result.
+        // overflow a 64 bit long, we have to form the double length product and
+        // extract a single length result.
         long result;
         if (n1 == (int)n1 && n2 == (int)n2) {
             result = Word.getLong(n1) * Word.getLong(n2);
             checkOverflow(result);
         } else {
-            BigInteger bigResult = makeBig(n1).multiply(makeBig(n2));
-            overflow = bigResult.bitLength() > 38;
-            result = bigResult.longValue();
+            multiply(n1, n2);
+            overflow = (hi != 0 && hi != -1);
+            result = (hi << 38) | lo;
         }
         return Word.asInteger(result);
     }
@@ -103,17 +109,39 @@ public class ALU {
      */
 
     public long longMul(long n1, long n2) {
-        BigInteger result = makeBig(n1).multiply(makeBig(n2));
-        overflow = (result.bitLength() > 76);
-        return makeLong2(result);
+        multiply(n1, n2);
+        checkOverflow(hi);
+        extension = lo;
+        return Word.asInteger(hi);
     }
 
     public long longDiv(long n1, long nx, long n2) {
         long n = 0;
         if (n2 != 0) {
-            BigInteger result = makeBig(n1, nx).divide(makeBig(n2));
-            overflow = (result.bitLength() > 76);
-            n = makeLong1(result);
+            // Divide the magnitudes and then fix up the sign.  The first step divides
+            // the high part, the remainder and low part are then divided 19 bits at a
+            // time so the intermediate values will not exceed 64 bits.
+            long dh = Word.getLong(n1), dl = nx & Word.INT_MASK;
+            long d = Word.getLong(n2);
+            boolean negative = (dh < 0) != (d < 0);
+            if (dh < 0) {
+                dh = (dl == 0) ? -dh : -dh-1;
+                dl = (dl == 0) ? 0 : (Word.INT_MASK+1) - dl;
+            }
+            if (d < 0)
+                d = -d;
+
+            long q1 = dh / d;
+            long r = ((dh % d) << 19) | (dl >> 19);
+            long q2 = r / d;
+            r = ((r % d) << 19) | (dl & LOW_MASK);
+            long q3 = r / d;
+            long q = (q1 << 38) | (q2 << 19) | q3;
+
+            // The quotient can only overflow if it is exactly +2^76
+            overflow = !negative && q1 > Word.INT_MASK;
+            extension = 0;
+            n = Word.asInteger(negative ? -q : q);
         } else {    // Divide by zero
             overflow = true;
             extension = 0;
@@ -122,15 +150,35 @@ public class ALU {
     }
 
     public long longShr(long n1, long nx, int n) {
-        BigInteger result = makeBig(n1, nx).shiftRight(n);
-        overflow = (result.bitLength() > 76);
-        return makeLong2(result);
+        // Right shift is an arithmetic shift so cannot overflow
+        long dh = Word.getLong(n1), dl = nx & Word.INT_MASK;
+        if (n <= 38) {
+            lo = ((dh << (38-n)) | (dl >> n)) & Word.INT_MASK;
+            hi = dh >> n;
+        } else {
+            long r = dh >> Math.min(n-38, 63);
+            lo = r & Word.INT_MASK;
+            hi = r >> 38;
+        }
+        overflow = false;
+        extension = lo;
+        return Word.asInteger(hi);
     }
 
     public long longShl(long n1, long nx, int n) {
-        BigInteger result = makeBig(n1, nx).shiftLeft(n);
-        overflow = (result.bitLength() > 76);
-        return makeLong2(result);
+        // Left shift overflows if the number of significant bits plus the shift
+        // will exceed 76 bits.  Bits shifted more than 64 places are simply lost.
+        long dh = Word.getLong(n1), dl = nx & Word.INT_MASK;
+        if (n < 38) {
+            lo = (dl << n) & Word.INT_MASK;
+            hi = (dh << n) | (dl >> (38-n));
+        } else {
+            lo = 0;
+            hi = shift(dh, n) | shift(dl, n-38);
+        }
+        overflow = (dh != 0 || dl != 0) && bitLength(dh, dl) + n > 76;
+        extension = lo;
+        return Word.asInteger(hi);
     }
 
     /*
@@ -145,24 +193,33 @@ public class ALU {
         return extension;
     }
 
-    // Convert a 39 bit or 77 bit value to a BigInteger
-    BigInteger makeBig(long n) {
-        return BigInteger.valueOf(Word.getLong(n));
+    // Form the double length product of two 39 bit values in hi and lo.  The second
+    // value is split into two parts of 20 and 19 bits so each partial product will fit
+    // in a 64 bit long.
+    void multiply(long n1, long n2) {
+        long a = Word.getLong(n1), b = Word.getLong(n2);
+        long t = a * (b >> 19);
+        long s = ((t & LOW_MASK) << 19) + a * (b & LOW_MASK);
+        hi = (t >> 19) + (s >> 38);
+        lo = s & Word.INT_MASK;
     }
 
-    BigInteger makeBig(long n, long nx) {
-        return BigInteger.valueOf(Word.getLong(n)).shiftLeft(38).or(BigInteger.valueOf(nx));
+    // Left shift that allows for shifts of 64 or more places
+    long shift(long n, int s) {
+        return (s < 64) ? n << s : 0;
     }
 
-    // Convert a BigInteger to a 39 or 77 bit value
-    long makeLong1(BigInteger n) {
-        extension = 0;
-        return (Word.asInteger(n.longValue()));
+    // Number of significant bits in a double length value, excluding the sign
+    int bitLength(long nh, long nl) {
+        if (nh < 0) {
+            nh = ~nh;
+            nl = ~nl & Word.INT_MASK;
+        }
+        return (nh != 0) ? 38 + bitLength(nh) : bitLength(nl);
     }
 
-    long makeLong2(BigInteger n) {
-        extension = (Word.asExtension(n.longValue()));
-        return (Word.asInteger(n.shiftRight(38).longValue()));
+    int bitLength(long n) {
+        return 64 - Long.numberOfLeadingZeros(n);
     }
 
     // Check for overflow.  The upper 25 bits of the Java long should be identical to bit
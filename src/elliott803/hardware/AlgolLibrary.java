@@ -0,0 +1,186 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Routines from the ALGOL (a104) run time library that can be intercepted and
+ * run directly in Java.
+ *
+ * The addresses and checksums are those of the library loaded by the compiler
+ * image in samples/machines/algol.803.  Each routine is written out here as a
+ * copy of its own instructions, in the same order and using the same arithmetic
+ * unit operations, so the results are identical to obeying it.
+ *
+ * @author Baldwin
+ */
+class AlgolLibrary {
+
+    static List<Intercept> routines() {
+        List<Intercept> list = new ArrayList<Intercept>();
+        list.add(new Series("series x", 7228, false));
+        list.add(new Series("series x^2", 7225, true));
+        return list;
+    }
+
+    /*
+     * Sum of a Chebyshev series, used by the sin, cos, arctan, ln and exp
+     * functions.  The accumulator holds the address of a table that gives
+     * the count of terms (as a negative integer) followed by the coefficients,
+     * and location 7247 holds the argument x.  With t = 4x-2, or t = 4x^2-2 for
+     * the second entry point, the coefficients are summed by the recurrence
+     *
+     *   b(k) = t*b(k+1) - b(k+2) + c(k)
+     *
+     * and the result is (b(0) - b(2))/2.  The halving is done by taking one off
+     * the exponent, unless the result is zero.
+     */
+    static class Series extends Intercept {
+
+        static final int START = 7225;      // Routine code
+        static final int END = 7240;
+        static final long CHECKSUM = 4091696456236473986L;
+
+        static final int LINK = 7241;       // Work words
+        static final int B2 = 7242;
+        static final int B1 = 7243;
+        static final int T = 7244;
+        static final int COUNT = 7245;
+        static final int TABLE = 7246;
+        static final int X = 7247;
+
+        static final int FOUR = 7279;       // Constants
+        static final int TWO = 7282;
+        static final int MINUS_ONE = 7304;
+
+        static final int MAX_TERMS = 256;   // Longest series run natively
+
+        boolean squared;
+
+        Series(String name, int addr, boolean squared) {
+            super(name, addr, 0, START, END, CHECKSUM);
+            this.squared = squared;
+        }
+
+        int call(CPU cpu) {
+            Store core = cpu.computer.core;
+            ALU alu = cpu.computer.alu;
+            FPU fpu = cpu.computer.fpu;
+            if (fpu == null)
+                return 0;
+
+            // The table address and the link are used as B modifiers
+            long table = cpu.acc;
+            int count = modify(030, 1, table, LINK, X);
+            int first = modify(030, 0, table, LINK, X);
+            int exit = modify(040, 1, core.read(LINK), 0, -1);
+            if (count < 0 || first < 0 || exit < 0)
+                return 0;
+
+            // 20 7246 / 30 1 : 20 7245 : 30 7247 : 63 7247 : 40 7230
+            // or 20 7246 / 30 1 : 20 7245 : 30 7247
+            boolean overflow = cpu.overflow;
+            long cell = core.read(count);
+            long x = core.read(X);
+            long acc = x;
+            int instructions = 4;
+            int cycles = 8;
+            if (squared) {
+                acc = fpu.mul(acc, x);
+                if (fpu.isFpOverflow())
+                    return 0;
+                overflow |= fpu.isOverflow();
+                instructions += 2;
+                cycles += 17+1;
+            }
+
+            // 63 7279 : 61 7282 : 20 7244 : 26 7243 : 00 7246 / 30 0
+            acc = fpu.mul(acc, core.read(FOUR));
+            if (fpu.isFpOverflow())
+                return 0;
+            overflow |= fpu.isOverflow();
+            acc = fpu.sub(acc, core.read(TWO));
+            if (fpu.isFpOverflow())
+                return 0;
+            overflow |= fpu.isOverflow();
+            long t = acc;
+            long b1 = 0, b2 = 0;
+            acc = core.read(first);
+            instructions += 6;
+            cycles += 17+3+2+2+2+2;
+
+            // 10 7245 : 10 7243 : 20 7242 : 30 7243 : 63 7244 : 61 7242 :
+            // 22 7246 / 60 1 : 12 7245 : 41 7233
+            int terms = 0;
+            do {
+                long a = acc;
+                acc = cell;
+                cell = a;
+                a = acc;
+                acc = b1;
+                b1 = a;
+                b2 = acc;
+                acc = b1;
+                acc = fpu.mul(acc, t);
+                if (fpu.isFpOverflow())
+                    return 0;
+                overflow |= fpu.isOverflow();
+                acc = fpu.sub(acc, b2);
+                if (fpu.isFpOverflow())
+                    return 0;
+                overflow |= fpu.isOverflow();
+                table = alu.add(1, table);
+                overflow |= alu.isOverflow();
+                int next = modify(060, 1, table, LINK, X);
+                if (next < 0 || ++terms > MAX_TERMS)
+                    return 0;
+                acc = fpu.add(acc, core.read(next));
+                if (fpu.isFpOverflow())
+                    return 0;
+                overflow |= fpu.isOverflow();
+                a = acc;
+                acc = alu.add(1, cell);
+                overflow |= alu.isOverflow();
+                cell = a;
+                instructions += 10;
+                cycles += 2+2+2+2+17+3+2+3+2+1;
+            } while (alu.isNeg(acc));
+
+            // 30 7245 : 61 7242 : 42 7240 : 04 7304 : 00 7241 / 40 1
+            acc = fpu.sub(cell, b2);
+            if (fpu.isFpOverflow())
+                return 0;
+            overflow |= fpu.isOverflow();
+            instructions += 3;
+            cycles += 2+3+1;
+            if (!alu.isZero(acc)) {
+                acc = alu.add(acc, core.read(MINUS_ONE));
+                overflow |= alu.isOverflow();
+                instructions += 1;
+                cycles += 2;
+            }
+            instructions += 2;
+            cycles += 2+1;
+
+            // Only now update the store and registers
+            core.write(B2, b2);
+            core.write(B1, b1);
+            core.write(T, t);
+            core.write(COUNT, cell);
+            core.write(TABLE, table);
+            cpu.acc = acc;
+            cpu.ar = 0;
+            cpu.overflow = overflow;
+            cpu.scr = exit;
+            cpu.scr2 = 0;
+            cpu.jump = true;
+            cpu.cycles = cycles;
+            return instructions;
+        }
+    }
+}
@@ -0,0 +1,62 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import elliott803.machine.Instruction;
+
+/**
+ * A block of instructions.  This is a straight-line run of instructions that
+ * can be executed one after the other without needing to return to the main CPU
+ * loop.  A block ends with the first jump (group 4) or peripheral (group 7)
+ * instruction, as these are the only instructions that can change the flow of
+ * control or stop the CPU.
+ *
+ * Blocks are built from the pre-decoded store words and are thrown away as soon
+ * as any of the words they cover is written.
+ *
+ * Each block counts the number of times it has been executed.  Once a block is
+ * 'hot' the CPU will chain straight on to the following block rather than return
+ * to its main loop, up to a limit on the total number of cycles.
+ *
+ * @author Baldwin
+ */
+class Block {
+
+    static final int MAX_LENGTH = 64;       // Longest block, in instructions
+    static final int MAX_CYCLES = 1024;     // Longest run of chained blocks, in cycles
+    static final int HOT = 16;              // Executions before a block is chained
+
+    Store.Decoded[] words;                  // Store word for each instruction
+    int length;                             // Number of instructions in block
+    int count;                              // Number of times block executed
+
+    Block(Store store, int scr, int scr2) {
+        words = new Store.Decoded[MAX_LENGTH];
+        while (length < MAX_LENGTH) {
+            Store.Decoded d = store.decode(scr);
+            words[length++] = d;
+            if (isEnd((scr2 == 0) ? d.op1 : d.op2))
+                break;
+            if (scr2 == 0) {
+                scr2 = 1;
+            } else {
+                scr2 = 0;
+                scr = Instruction.getAddr(scr + 1);
+            }
+        }
+    }
+
+    // Check the first word of the block is still current.  Later words are
+    // checked as each instruction is fetched.
+    boolean isValid() {
+        return words[0].valid;
+    }
+
+    // Instructions that must end a block
+    static boolean isEnd(int op) {
+        return (op & 070) == 040 || (op & 070) == 070;
+    }
+}
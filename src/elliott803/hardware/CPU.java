@@ -5,14 +5,24 @@
  */
 package elliott803.hardware;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.List;
 import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
 
+import elliott803.machine.CallGraph;
 import elliott803.machine.Computer;
+import elliott803.machine.Coverage;
 import elliott803.machine.Dump;
+import elliott803.machine.FlightRecorder;
 import elliott803.machine.Instruction;
+import elliott803.machine.Profile;
 import elliott803.machine.Trace;
+import elliott803.machine.TraceFilter;
 import elliott803.machine.Word;
+import elliott803.telecode.Telecode;
 import elliott803.view.CpuView;
 
 /**
@@ -38,6 +48,8 @@ public class CPU {
 
     long ir;                // Last fetched instruction pair
     int irx;                // Instruction to execute
+    int op, addr;           // Op code and address of instruction to execute
+    boolean bmod;           // B digit of last fetched instruction pair
     int scr;                // Sequence control register
     int scr2;               // 0 = first instruction, 1 = second instruction
 
@@ -45,6 +57,14 @@ public class CPU {
     AtomicBoolean running;
     boolean jump;
     Trace trace;
+    TraceFilter traceFilter;
+
+    // Variables used by the block execution engine
+    boolean useBlocks;
+    boolean useChaining;
+    boolean headless;
+    Block[] blocks;
+    int[] sound;
 
     // Variables used to control instruction timing
     boolean useSpin;
@@ -52,6 +72,59 @@ public class CPU {
     long spinPause, sleepPause;
     long busyStart;
 
+    static final long IDLE_WAIT = 100;  // Longest idle wait when in real time (ms)
+
+    // Variables used to detect idle loops that repeat the same state
+    long loopAcc, loopAr;
+    boolean loopOverflow;
+    int loopIrx, loopScr;
+    long loopEvents;
+    int loopLength, loopLimit;
+    long io;
+
+    static final int LOOP_LIMIT = 4096; // Longest loop checked for (blocks)
+
+    // Count of instructions obeyed and cycles taken, across all runs
+    long instructionCount, cycleCount;
+
+    // Count of characters read and written by the paper tape station
+    long characters;
+
+    // Cycle count and host time (ns) at the last reset
+    long resetCycles, resetTime;
+
+    // Checkpoints kept to allow going backwards, or null
+    Checkpoints checkpoints;
+
+    // Flight recorder of recent instructions, or null
+    FlightRecorder recorder;
+
+    // Execution profile, or null
+    Profile profile;
+
+    // Call graph profile, or null
+    CallGraph callGraph;
+
+    // Code coverage, or null
+    Coverage coverage;
+
+    // Library routines run directly in Java, indexed by entry point as 2*scr+scr2,
+    // or null.  When checking, each call is also compared with the real routine.
+    List<Intercept> interceptList;
+    Intercept[] intercepts;
+    boolean checkIntercepts;
+    Intercept checking;
+
+    // Load binary tapes directly into store
+    boolean fastLoad;
+
+    static final int LOAD_LOOP = 2*2;   // Tape loading loop of the initial instructions
+
+    // Address of the current instruction, as 2*scr+scr2, published for a
+    // sampling profiler
+    boolean sampling;
+    AtomicInteger position = new AtomicInteger();
+
     // Variables used to calculate relative speed
     AtomicBoolean realTime;
     AtomicLong cpuStart, cpuBusy, cpuCycles;
@@ -63,8 +136,13 @@ public class CPU {
         cpuStart = new AtomicLong();
         cpuBusy = new AtomicLong();
         cpuCycles = new AtomicLong();
+        blocks = new Block[2*Instruction.ADDR_BITS+2];
+        sound = new int[Block.MAX_LENGTH];
+        useBlocks = true;
+        useChaining = true;
         setCycleTime(288);              // Default cycle time is 288us
         calibrate();
+        resetTime = System.nanoTime();
 
         if (Computer.debug) {
             System.out.println("CPU:");
@@ -80,23 +158,43 @@ public class CPU {
         cycleNano = us*1000;
     }
 
+    // Select block execution (the default) or one instruction at a time
+    public void setBlocks(boolean enabled) {
+        useBlocks = enabled;
+    }
+
+    // Select chaining of hot blocks (the default) or a return to the main loop
+    // after every block
+    public void setChaining(boolean enabled) {
+        useChaining = enabled;
+    }
+
     // Set the next instruction to be executed
     public void setInstruction(int instruction) {
         synchronized(this) {
             irx = Instruction.asInstr(instruction);
+            op = Instruction.getOp(irx);
+            addr = Instruction.getAddr(irx);
             viewState();
+            if (checkpoints != null)
+                checkpoints.force();
         }
     }
 
     // Stop execution after the current instruction
     public void stop() {
+        if (checkpoints != null)
+            checkpoints.force();
         running.set(false);
         computer.console.setStep(true);
         cpuCycles.set(0);
+        computer.idleClear();
     }
 
     // Reset the CPU - clears overflow and busy states and stops execution
     public void reset() {
+        if (recorder != null)
+            recorder.event(FlightRecorder.RESET);
         stop();
         computer.busyClear();
         computer.console.setOverflow(false, false);
@@ -105,7 +203,11 @@ public class CPU {
             acc = ar = 0;
             scr2 = scr = 0;
             ir = irx = 0;
+            op = addr = 0;
+            bmod = false;
             overflow = fpOverflow = false;
+            resetCycles = cycleCount;
+            resetTime = System.nanoTime();
         }
     }
 
@@ -128,11 +230,25 @@ public class CPU {
 
         long now = System.nanoTime();
         long end = now;
+        loopEvents = -1;
 
         running.set(true);
+        if (isHeadless()) {
+            runHeadless();
+            now = end = System.nanoTime();
+        }
+
         while (running.get()) {
+            boolean idle = false;
+            int idleCount = 0;
             synchronized (this) {
-                obey();
+                // Run the next block of instructions, or just the next instruction
+                // if we are tracing.  Either way 'cycles' is the total time taken.
+                if (useBlocks && trace == null) {
+                    runBlock();
+                } else {
+                    obey();
+                }
                 cpuCycles.addAndGet(cycles);
 
                 // It is hard to get timings exact in Java.  This logic assumes we
@@ -163,76 +279,446 @@ public class CPU {
                 }
 
                 // Ensure the block transfer and busy lights are off when an instruction
-                // finally completes.  We have to do this here because we want the lights
+                // (or block) finally completes.  We have to do this here because we want the lights
                 // to remain on while an I/O operation/ occurs, including any delay added
                 // to simulate real-time speed.  This is a little bit of a hack.
                 computer.console.setBlockTr(false);
                 computer.console.setBusy(false);
+
+                // Check if we are now in an idle loop, unless the speaker is on as
+                // the sound of a loop is often the only sign the program has ended.
+                if (!computer.console.isSpeakerOn()) {
+                    idleCount = computer.idleCount();
+                    idle = isIdle();
+                }
+            }
+
+            // When idle there is no point running the loop, so wait for something
+            // to happen that might end it.  In real time the loop would have been
+            // running all this time, so count the cycles it would have taken.  The
+            // wait is limited so the cycle count keeps moving for the speed display.
+            if (idle) {
+                long start = System.nanoTime();
+                computer.idleWait(idleCount, realTime.get() ? IDLE_WAIT : 0);
+                long time = System.nanoTime() - start;
+                if (realTime.get()) {
+                    cpuCycles.addAndGet(time/cycleNano);
+                } else {
+                    cpuBusy.addAndGet(time/1000000);
+                }
+                now = end = System.nanoTime();
             }
         }
     }
 
+    // Check if nothing is watching the CPU: there are no views attached and we are
+    // not running in real time or tracing.
+    boolean isHeadless() {
+        return useBlocks && trace == null && !realTime.get()
+                && view == null && computer.core.view == null && computer.console.view == null;
+    }
+
+    // Headless execution, used when nothing is watching the CPU.  This just runs
+    // blocks of instructions, and the console lights and cycle count are only
+    // brought up to date when it ends.  It ends when the CPU stops, or as soon as
+    // something starts watching it (such as the program turning on a trace) so
+    // the normal loop can carry on.
+    void runHeadless() {
+        long total = 0;
+        while (running.get()) {
+            boolean idle;
+            int idleCount;
+            synchronized (this) {
+                if (!isHeadless())
+                    break;
+                headless = true;
+                runBlock();
+                headless = false;
+                total += cycles;
+
+                idleCount = computer.idleCount();
+                idle = isIdle();
+            }
+
+            // Wait without holding the CPU monitor, so other threads can use the CPU
+            if (idle)
+                computer.idleWait(idleCount, 0);
+        }
+
+        cpuCycles.addAndGet(total);
+        computer.console.setOverflow(overflow, fpOverflow);
+        computer.console.setBlockTr(false);
+        computer.console.setBusy(false);
+    }
+
+    // Check if the next instruction starts an idle loop that can only end when
+    // something outside the CPU changes.  This is either a jump to itself (a
+    // 'dynamic stop') or a word that reads the word generator and then jumps back
+    // to itself.  Only unmodified jumps that will definitely be taken are checked.
+    // Longer loops are found by isLooping().
+    boolean isIdle() {
+        Store.Decoded d = computer.core.decode(scr);
+        if (!d.bmod) {
+            if (scr2 == 0) {
+                if (d.addr1 == scr && (d.op1 & 074) == 040)
+                    return isJump(d.op1, acc);
+                if (d.addr2 == scr && (d.op2 & 074) == 040 && d.op1 == 070)
+                    return !computer.console.manualData && !computer.console.manualDataDelay
+                            && isJump(d.op2, computer.console.readWordGen());
+            } else {
+                if (d.addr2 == scr && (d.op2 & 074) == 044)
+                    return isJump(d.op2, acc);
+            }
+        }
+        return isLooping();
+    }
+
+    // Check for a loop that has come back to exactly the same state without
+    // changing the store, transferring any data or seeing a change on the
+    // console.  Such a loop can never end by itself, for example a program that
+    // keeps reading the word generator waiting for a key to be pressed.  The
+    // state is checked at the end of each block and saved each time the number
+    // of blocks run since the last save reaches a power of two (Brent's method),
+    // so a loop of any length up to LOOP_LIMIT blocks is found.
+    boolean isLooping() {
+        long events = computer.core.changes + io + computer.idleCount();
+        if (events != loopEvents || loopLength == loopLimit) {
+            loopLimit = (events != loopEvents) ? 1 : Math.min(2*loopLimit, LOOP_LIMIT);
+            loopEvents = events;
+            loopLength = 0;
+            loopAcc = acc;
+            loopAr = ar;
+            loopOverflow = overflow;
+            loopIrx = irx;
+            loopScr = 2*scr + scr2;
+            return false;
+        }
+        loopLength++;
+        return acc == loopAcc && ar == loopAr && overflow == loopOverflow
+                && irx == loopIrx && 2*scr + scr2 == loopScr;
+    }
+
+    // Check if a jump would be taken with the given accumulator value.  Jumps
+    // on overflow are never idle as they clear the overflow.
+    boolean isJump(int op, long a) {
+        switch (op & 003) {
+            case 0: return true;
+            case 1: return computer.alu.isNeg(a);
+            case 2: return computer.alu.isZero(a);
+        }
+        return false;
+    }
+
     // Obey the next instruction.
     public void obey() {
         synchronized (this) {
-            // Execute the instruction
+            if (checkpoints != null)
+                checkpoints.check();
+
+            // Execute the instruction and step to the next
             execute();
+            next();
+            instructionCount++;
+            cycleCount += cycles;
 
-            // Step to the next instruction, unless we had jump in which case the
-            // new address will already be set in scr/scr2.
-            if (!jump) {
-                if (scr2 == 0) {
-                    scr2 = 1;
-                } else {
-                    scr2 = 0;
-                    scr = Instruction.getAddr(scr + 1);
+            // Fetch next instruction and display state
+            fetch();
+            viewState();
+        }
+    }
+
+    // Run a block of instructions, starting with the instruction that has already
+    // been fetched.  The console lights, speaker and view are only updated at the
+    // end of the block and 'cycles' is set to the total time for the block.
+    //
+    // When not running in real time, hot blocks (blocks that have already been
+    // executed many times) that end with a jump are chained together.  The next
+    // block is run straight away, so a hot loop can run for many iterations
+    // without returning to the main loop.  Chaining stops at any peripheral
+    // instruction, as these can wait or stop the CPU.
+    //
+    // When fast loading, reaching the loop at the start of word 2 of the initial
+    // instructions loads the rest of the tape in reader 1 straight away.
+    //
+    // Library routines are only intercepted when blocks are chained and nothing is
+    // profiling or keeping checkpoints of the individual instructions.  The flight
+    // recorder just sees the jump to the routine.
+    void runBlock() {
+        boolean speaker = computer.console.isSpeakerOn();
+        boolean chain = useChaining && !speaker && !realTime.get();
+        boolean watched = checkpoints != null || profile != null || callGraph != null || coverage != null;
+        boolean intercept = chain && intercepts != null && !watched;
+        int total = 0;
+        int count = 0;
+        while (true) {
+            // Checkpoints are checked before each block, including chained blocks
+            if (checkpoints != null)
+                checkpoints.check();
+            int index = 2*scr + scr2;
+            if (checking != null && checking.checkEnd(this))
+                checking = null;
+            if (index == LOAD_LOOP && fastLoad && !watched && load())
+                continue;
+            if (intercept && intercepts[index] != null && intercept(intercepts[index])) {
+                total += cycles;
+                fetch();
+                if (total > Block.MAX_CYCLES)
+                    break;
+                continue;
+            }
+            Block block = blocks[index];
+            if (block == null || !block.isValid()) {
+                block = new Block(computer.core, scr, scr2);
+                blocks[index] = block;
+            }
+            block.count++;
+
+            int last = 0;
+            boolean valid = true;
+            for (int i = 0; ; ) {
+                dispatch();
+                total += cycles;
+                cycleCount += cycles;
+                if (speaker)
+                    sound[count] = (op > 037) ? -cycles : cycles;
+                count++;
+                instructionCount++;
+                if (fpOverflow)
+                    updateOverflow();
+                next();
+
+                // The block ends early if the instruction jumped or was a B-modified
+                // instruction that became a jump or peripheral instruction.  It is
+                // also abandoned if the store word holding the next instruction has
+                // been written.
+                if (++i == block.length || jump || Block.isEnd(op)) {
+                    last = op;
+                    fetch();
+                    break;
                 }
+                Store.Decoded d = block.words[i];
+                if (!d.valid) {
+                    blocks[index] = null;
+                    valid = false;
+                    last = op;
+                    fetch();
+                    break;
+                }
+                fetch(d);
             }
 
-            // Fetch next instruction and display state
-            fetch();
+            if (!chain || !valid || block.count < Block.HOT || total > Block.MAX_CYCLES
+                    || (last & 070) == 070 || busyStart != 0)
+                break;
+        }
+
+        // Replay the speaker sound for each instruction in the block.  Only the
+        // last instruction can have caused a busy wait.
+        for (int i = 0; speaker && i < count; i++) {
+            int c = sound[i];
+            computer.console.speakerSound(c < 0, 1);
+            if (i < count-1 || busyStart == 0)
+                computer.console.speakerSound(false, Math.abs(c)-1);
+        }
+
+        if (!headless) {
+            updateOverflow();
             viewState();
         }
+        cycles = total;
+    }
+
+    // Call a library routine in place of obeying it, if its code is in store.  Returns
+    // true if the routine was run, leaving the next instruction to be fetched.  When
+    // checking, the call is run and then undone, and the real routine is obeyed.
+    boolean intercept(Intercept routine) {
+        if (checking != null || !routine.isPresent(computer.core))
+            return false;
+        if (checkIntercepts) {
+            if (routine.checkStart(this))
+                checking = routine;
+            return false;
+        }
+        int count = routine.call(this);
+        if (count == 0)
+            return false;
+        if (sampling)
+            position.lazySet(2*routine.addr + routine.addr2);
+        instructionCount += count;
+        cycleCount += cycles;
+        routine.calls++;
+        routine.cycles += cycles;
+        return true;
     }
 
-    // Fetch the next instruction
+    // Obey the tape loading loop of the initial instructions (words 1 to 3) directly,
+    // taking characters straight from the tape in reader 1, until the tape runs out
+    // or the next '16' store instruction would be modified into something else by
+    // the tape's trigger.  The loop's instructions are obeyed by calling the
+    // instruction methods, so the store, registers and counts are the same as
+    // obeying the loop, but no time is taken to read the tape.  Returns true if
+    // any characters were loaded, leaving the next instruction fetched.
+    boolean load() {
+        Reader reader = computer.pts.readers[PaperTapeStation.READER1];
+        InputStream tape = reader.inputTape;
+        if (tape == null)
+            return false;
+
+        long count = 0, total = 0;
+        int ch = 0;
+        while (true) {
+            // Stop at '55 5' when there is nothing left to read
+            int c;
+            try {
+                c = tape.read();
+            } catch (IOException e) {
+                c = -1;
+            }
+            if (c == -1)
+                break;
+            ch = c & Telecode.CHAR_MASK;
+
+            // 55 5 : 71 0 : 43 1 : 40 2
+            group5(055, 5);
+            total += cycles;
+            io++;
+            characters++;
+            input(ch);
+            acc |= ch;
+            group4(043, 1);
+            total += 2 + 1;
+            count += 3;
+            if (!jump) {
+                scr = 2;
+                total += 1;
+                count += 1;
+                continue;
+            }
+
+            // 22 4 / 16 3, unless it would no longer be a '16'
+            long b = computer.alu.add(1, computer.core.store[4]);
+            int irx = Word.getInstr2(computer.core.store[1]) + Word.getInstr2(b);
+            if (Instruction.getOp(irx) != 016)
+                break;
+            group0123(022, 4);
+            irx = Word.getInstr2(computer.core.store[1]) + Word.getInstr2(computer.core.read(4));
+            group0123(016, Instruction.getAddr(irx));
+            scr = 2;
+            scr2 = 0;
+            total += 2 + 2;
+            count += 2;
+        }
+        if (count == 0)
+            return false;
+
+        instructionCount += count;
+        cycleCount += total;
+        jump = true;
+        fetch();
+        reader.viewChar(ch);
+        return true;
+    }
+
+    // Step to the next instruction, unless we had jump in which case the
+    // new address will already be set in scr/scr2.
+    void next() {
+        if (!jump) {
+            if (scr2 == 0) {
+                scr2 = 1;
+            } else {
+                scr2 = 0;
+                scr = Instruction.getAddr(scr + 1);
+            }
+        }
+    }
+
+    // Fetch the next instruction.  Instructions are taken from the pre-decoded
+    // form of the store word, which the store keeps up to date on every write.
     void fetch() {
         if (scr2 == 0) {
             // Processing first instruction, so just fetch from store
-            ir = computer.core.fetch(scr);
-            irx = Word.getInstr1(ir);
+            Store.Decoded d = computer.core.decode(scr);
+            ir = d.word;
+            irx = d.instr1;
+            op = d.op1;
+            addr = d.addr1;
+            bmod = d.bmod;
         } else {
             // Processing of second instruction depends on B digit setting,
             // unless we got here via a jump.
-            if (jump || Word.getB(ir) == 0) {
+            if (jump || !bmod) {
                 // No modification needed but we must re-fetch the instruction
                 // word in case the previous instruction modified it.
-                ir = computer.core.fetch(scr);
-                irx = Word.getInstr2(ir);
+                Store.Decoded d = computer.core.decode(scr);
+                ir = d.word;
+                irx = d.instr2;
+                op = d.op2;
+                addr = d.addr2;
             } else {
                 // B-line modification is applied to the original value of the
                 // second instruction (even if it has been modified in store).
-                long b = computer.core.read(Instruction.getAddr(irx));
+                long b = computer.core.read(addr);
                 irx = Word.getInstr2(ir) + Word.getInstr2(b);
+                op = Instruction.getOp(irx);
+                addr = Instruction.getAddr(irx);
             }
         }
 
-        // Trace each new instruction pair or following a jump
+        // Trace each new instruction pair or following a jump, or each instruction
+        // that passes the trace filter
         if (trace != null) {
-            if (jump || scr2 == 0)
+            if ((traceFilter == null) ? (jump || scr2 == 0) : traceFilter.accept(scr, op, acc))
                 trace.trace(scr, scr2, ir, acc, overflow);
         }
     }
 
+    // Fetch the next instruction from a block.  This is the same as fetch() but
+    // the block already holds the decoded store word and we know the instruction
+    // was not reached by a jump.
+    void fetch(Store.Decoded d) {
+        if (scr2 == 0) {
+            ir = d.word;
+            irx = d.instr1;
+            op = d.op1;
+            addr = d.addr1;
+            bmod = d.bmod;
+        } else if (!bmod) {
+            ir = d.word;
+            irx = d.instr2;
+            op = d.op2;
+            addr = d.addr2;
+        } else {
+            long b = computer.core.read(addr);
+            irx = Word.getInstr2(ir) + Word.getInstr2(b);
+            op = Instruction.getOp(irx);
+            addr = Instruction.getAddr(irx);
+        }
+    }
+
     // Execute a single instruction
     void execute() {
-        int op = Instruction.getOp(irx);
-        int addr = Instruction.getAddr(irx);
-
         // Start the initial sound sample
         computer.console.speakerSound(op > 037, 1);
 
-        // Perform the operation.  Default cycle time is 576us (2 cycles)
+        // Perform the operation
+        dispatch();
+
+        // Complete the sound sample unless we had a busy wait
+        if (busyStart == 0) {
+            computer.console.speakerSound(false, cycles-1);
+        }
+
+        // Update console lights to track overflow states
+        updateOverflow();
+    }
+
+    // Perform the operation.  Default cycle time is 576us (2 cycles)
+    void dispatch() {
+        if (recorder != null)
+            recorder.record(scr, scr2, ir, acc, overflow);
+        if (sampling)
+            position.lazySet(2*scr + scr2);
+        int at = scr, at2 = scr2;
         busyStart = 0;
         jump = false;
         cycles = 2;
@@ -244,16 +730,21 @@ public class CPU {
             case 6: group6(op, addr);  break;
             case 7: group7(op, addr);  break;
         }
+        if (profile != null)
+            profile.count(at, cycles);
+        if (callGraph != null)
+            callGraph.count(at, op, jump ? scr : -1, cycles);
+        if (coverage != null)
+            coverage.count(at, at2, op, jump);
+    }
 
-        // Complete the sound sample unless we had a busy wait
-        if (busyStart == 0) {
-            computer.console.speakerSound(false, cycles-1);
-        }
-
-        // Update console lights to track overflow states
+    // Update console lights to track overflow states
+    void updateOverflow() {
         computer.console.setOverflow(overflow, fpOverflow);
         if (fpOverflow) {
             // Floating point overflow should wait for Operate before continuing
+            if (recorder != null)
+                recorder.event(FlightRecorder.OVERFLOW);
             computer.console.suspend();
             fpOverflow = false;
             computer.console.setOverflow(overflow, fpOverflow);
@@ -375,10 +866,14 @@ public class CPU {
 
     // Execute a group 7 control/peripheral instruction
     void group7(int op, int addr) {
+        // When obeying instructions again after going back to a checkpoint, input
+        // is taken from the checkpoint journal and output is skipped.
+        boolean replay = (checkpoints != null && checkpoints.isReplay());
         switch (op & 007) {
             // 70 and 73 are standard instructions
             case 0:
-                acc = computer.console.read();
+                acc = replay ? checkpoints.replayInput() : computer.console.read();
+                input(acc);
                 break;
 
             case 3:
@@ -390,18 +885,29 @@ public class CPU {
 
             // 71 and 74 read and write the paper tape readers and punches via the PTS.
             case 1:
-                acc |= computer.pts.read(addr);
+                io++;
+                characters++;
+                long ch = replay ? checkpoints.replayInput() : computer.pts.read(addr);
+                input(ch);
+                acc |= ch;
                 break;
             case 4:
-                computer.pts.write(addr);
+                io++;
+                characters++;
+                if (!replay)
+                    computer.pts.write(addr);
                 break;
 
             // 72 and 75 write and read the 'control' mode devices
             case 2:
-                computer.devices.controlWrite(addr, acc);
+                io++;
+                if (!replay)
+                    computer.devices.controlWrite(addr, acc);
                 break;
             case 5:
-                long a = computer.devices.controlRead(addr);
+                io++;
+                long a = replay ? checkpoints.replayInput() : computer.devices.controlRead(addr);
+                input(a);
                 if (a != Word.NOTHING)
                     acc = a;
                 break;
@@ -413,6 +919,89 @@ public class CPU {
         }
     }
 
+    // Record a value read by an input instruction, if keeping checkpoints
+    void input(long value) {
+        if (checkpoints != null)
+            checkpoints.input(value);
+    }
+
+    /*
+     * Checkpoints and going backwards
+     */
+
+    // Keep a checkpoint every 'interval' instructions, allowing the CPU to go
+    // back to earlier instructions.  An interval of zero stops keeping them.
+    // When running blocks the checkpoint is taken before the next block, so it
+    // can be up to one block (Block.MAX_LENGTH instructions) late.
+    public void setCheckpoints(int interval) {
+        synchronized (this) {
+            checkpoints = (interval > 0) ? new Checkpoints(this, computer.core, interval) : null;
+            computer.core.checkpoints = checkpoints;
+        }
+    }
+
+    public boolean isCheckpoints() {
+        return checkpoints != null;
+    }
+
+    // Go back the given number of instructions.  Only possible when the CPU is
+    // stopped and there is a checkpoint early enough.
+    public boolean stepBack(int count) {
+        synchronized (this) {
+            if (running.get() || checkpoints == null || count < 0)
+                return false;
+            return goBack(instructionCount - count);
+        }
+    }
+
+    // Go back to the last instruction that wrote to an address, so that it
+    // will be the next instruction obeyed.
+    public boolean stepBackToWrite(int addr) {
+        synchronized (this) {
+            if (running.get() || checkpoints == null || addr < 0)
+                return false;
+            long count = checkpoints.lastWrite(Instruction.asAddr(addr), instructionCount);
+            return (count >= 0) && goBack(count);
+        }
+    }
+
+    boolean goBack(long target) {
+        if (!checkpoints.goBack(target))
+            return false;
+        computer.console.setOverflow(overflow, fpOverflow);
+        viewState();
+        return true;
+    }
+
+    // Obey instructions again after going back to a checkpoint, up to the given
+    // instruction count.  This is the same as obey() but without any tracing,
+    // sound or waiting on floating point overflow.
+    void replay(long target) {
+        Trace t = trace;
+        FlightRecorder r = recorder;
+        Profile p = profile;
+        CallGraph g = callGraph;
+        Coverage c = coverage;
+        trace = null;
+        recorder = null;
+        profile = null;
+        callGraph = null;
+        coverage = null;
+        while (instructionCount < target) {
+            dispatch();
+            fpOverflow = false;
+            next();
+            fetch();
+            instructionCount++;
+            cycleCount += cycles;
+        }
+        trace = t;
+        recorder = r;
+        profile = p;
+        callGraph = g;
+        coverage = c;
+    }
+
     // Set Real time execution speed
     public void setRealTime(boolean rt) {
         realTime.set(rt);
@@ -434,6 +1023,30 @@ public class CPU {
         return factor;
     }
 
+    // Return the total number of instructions obeyed and cycles taken.  These
+    // are only updated while the CPU is running, so should be read once it stops.
+    public long getInstructionCount() {
+        return instructionCount;
+    }
+
+    public long getCycleCount() {
+        return cycleCount;
+    }
+
+    public long getCharacterCount() {
+        return characters;
+    }
+
+    // Return the cycles taken and the host time elapsed in microseconds since
+    // the last reset.  The cycles do not include the instruction being obeyed.
+    public long getCyclesSinceReset() {
+        return cycleCount - resetCycles;
+    }
+
+    public long getTimeSinceReset() {
+        return (System.nanoTime() - resetTime)/1000;
+    }
+
     // Called to indicate start/end of 'busy' wait.  The time in busy
     // waits needs to be excluded when calculating CPU speed.
     public synchronized void busy(boolean start) {
@@ -483,11 +1096,91 @@ public class CPU {
         dump.scr2 = scr2;
         dump.overflow = overflow;
         dump.fpOverflow = fpOverflow;
+        dump.instructions = instructionCount;
+        dump.cycles = cycleCount;
+    }
+
+    // Restore the registers and counters from a dump, so execution can carry on
+    // from the instruction that was current when it was taken.  This must be done
+    // after the store has been restored.
+    public synchronized void restore(Dump dump) {
+        acc = dump.acc;
+        ar = dump.ar;
+        ir = dump.ir;
+        irx = dump.ix;
+        op = Instruction.getOp(irx);
+        addr = Instruction.getAddr(irx);
+        bmod = (Word.getB(ir) != 0);
+        scr = dump.scr;
+        scr2 = dump.scr2;
+        overflow = dump.overflow;
+        fpOverflow = dump.fpOverflow;
+        jump = true;
+        instructionCount = dump.instructions;
+        cycleCount = dump.cycles;
+        viewState();
+    }
+
+    // Execution profile
+    public synchronized void profile(Profile profile) {
+        this.profile = profile;
+    }
+
+    // Call graph profile
+    public synchronized void callGraph(CallGraph callGraph) {
+        this.callGraph = callGraph;
+    }
+
+    // Code coverage
+    public synchronized void coverage(Coverage coverage) {
+        this.coverage = coverage;
+    }
+
+    // Load binary tapes directly into store when the initial instructions are used
+    public synchronized void setFastLoad(boolean enabled) {
+        fastLoad = enabled;
+    }
+
+    // Run known library routines directly in Java, optionally checking each call
+    // against the real routine
+    public synchronized void setIntercepts(boolean enabled, boolean check) {
+        interceptList = null;
+        intercepts = null;
+        checking = null;
+        if (enabled) {
+            interceptList = AlgolLibrary.routines();
+            intercepts = new Intercept[2*Instruction.ADDR_BITS+2];
+            for (Intercept routine : interceptList)
+                intercepts[2*routine.addr + routine.addr2] = routine;
+        }
+        checkIntercepts = check;
+    }
+
+    // The library routines being intercepted, or null
+    public List<Intercept> getIntercepts() {
+        return interceptList;
+    }
+
+    // Sampling profiler
+    public synchronized void setSampling(boolean enabled) {
+        sampling = enabled;
+    }
+
+    // Address of the current instruction as 2*scr+scr2, or -1 if the CPU is
+    // not running.  This can be called from any thread.
+    public int getPosition() {
+        return running.get() ? position.get() : -1;
+    }
+
+    // Flight recorder
+    public synchronized void setRecorder(FlightRecorder recorder) {
+        this.recorder = recorder;
     }
 
     // Trace
     public synchronized void trace(Trace trace) {
         this.trace = trace;
+        traceFilter = (trace != null) ? trace.getFilter() : null;
         viewTrace();
     }
 
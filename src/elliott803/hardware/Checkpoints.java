@@ -0,0 +1,264 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Checkpoints of the CPU registers and the store, used to step the CPU backwards.
+ *
+ * A checkpoint is taken every 'interval' instructions.  The store is held in pages
+ * and each checkpoint only copies the pages that have been written since the one
+ * before, sharing all the others.  Between checkpoints a journal records the
+ * address of every store write and the value of every peripheral input.
+ *
+ * To go back to an earlier instruction the latest checkpoint before it is restored
+ * and the instructions from there are obeyed again.  Input instructions take their
+ * values from the journal and output instructions are skipped, so the peripherals
+ * are not affected: tapes already read stay read and output stays printed.
+ *
+ * Anything that changes the CPU or store from outside a running program (a reset,
+ * an instruction set from the console or a store clear) forces a new checkpoint
+ * before the next instruction, so such changes never happen between checkpoints.
+ *
+ * @author Baldwin
+ */
+class Checkpoints {
+
+    static final int PAGE_BITS = 6;
+    static final int PAGE_SIZE = 1 << PAGE_BITS;
+    static final int PAGES = Store.STORE_SIZE / PAGE_SIZE;
+
+    static final int MAX_CHECKPOINTS = 100;     // Number of checkpoints kept
+
+    // Journal write entries hold the instruction count above the store address
+    static final int COUNT_SHIFT = Integer.numberOfTrailingZeros(Store.STORE_SIZE);
+    static final int WRITE_ADDR_MASK = Store.STORE_SIZE - 1;
+
+    /*
+     * A single checkpoint.  The CPU state is saved between instructions, after
+     * the next instruction has been fetched.
+     */
+    static class Checkpoint {
+        long count;                     // Instruction count
+        long cycles;                    // Cycle count
+        long[][] pages;                 // Store pages
+        int writes, inputs;             // Journal positions
+
+        long acc, ar;
+        boolean overflow, fpOverflow;
+        long ir;
+        int irx, op, addr;
+        boolean bmod;
+        int scr, scr2;
+    }
+
+    CPU cpu;
+    Store store;
+    int interval;
+    long next;
+    boolean forced;
+
+    List<Checkpoint> checkpoints;
+    boolean[] dirty;                    // Pages written since the last checkpoint
+
+    // Journal of store writes, as instruction count and address
+    long[] writes;
+    int writeCount;
+
+    // Journal of input values, replayed from 'replay' up to 'replayEnd' when going back
+    long[] inputs;
+    int inputCount;
+    int replay = -1;
+    int replayEnd;
+
+    Checkpoints(CPU cpu, Store store, int interval) {
+        this.cpu = cpu;
+        this.store = store;
+        this.interval = interval;
+        checkpoints = new ArrayList<Checkpoint>();
+        dirty = new boolean[PAGES];
+        writes = new long[1024];
+        inputs = new long[256];
+        forced = true;
+    }
+
+    /*
+     * Recording
+     */
+
+    // Called before each instruction or block of instructions
+    void check() {
+        if (forced || cpu.instructionCount >= next)
+            take();
+    }
+
+    // Force a new checkpoint before the next instruction
+    void force() {
+        forced = true;
+    }
+
+    // The whole store has changed
+    void storeChanged() {
+        for (int i = 0; i < PAGES; i++)
+            dirty[i] = true;
+        forced = true;
+    }
+
+    // Record a store write
+    void write(int addr) {
+        dirty[addr >> PAGE_BITS] = true;
+        if (writeCount == writes.length)
+            writes = grow(writes);
+        writes[writeCount++] = (cpu.instructionCount << COUNT_SHIFT) | addr;
+    }
+
+    // Record a value read by an input instruction
+    void input(long value) {
+        if (inputCount == inputs.length)
+            inputs = grow(inputs);
+        inputs[inputCount++] = value;
+    }
+
+    boolean isReplay() {
+        return replay >= 0;
+    }
+
+    // Return the next recorded input value when obeying instructions again.  The
+    // value is recorded again in the same place by input().
+    long replayInput() {
+        return (replay < replayEnd) ? inputs[replay++] : 0;
+    }
+
+    // Take a new checkpoint, only copying the store pages that have changed
+    void take() {
+        Checkpoint last = checkpoints.isEmpty() ? null : checkpoints.get(checkpoints.size()-1);
+        Checkpoint cp = new Checkpoint();
+        cp.count = cpu.instructionCount;
+        cp.cycles = cpu.cycleCount;
+        cp.pages = new long[PAGES][];
+        for (int i = 0; i < PAGES; i++) {
+            if (last == null || dirty[i]) {
+                cp.pages[i] = new long[PAGE_SIZE];
+                System.arraycopy(store.store, i*PAGE_SIZE, cp.pages[i], 0, PAGE_SIZE);
+            } else {
+                cp.pages[i] = last.pages[i];
+            }
+            dirty[i] = false;
+        }
+        cp.writes = writeCount;
+        cp.inputs = inputCount;
+
+        cp.acc = cpu.acc;
+        cp.ar = cpu.ar;
+        cp.overflow = cpu.overflow;
+        cp.fpOverflow = cpu.fpOverflow;
+        cp.ir = cpu.ir;
+        cp.irx = cpu.irx;
+        cp.op = cpu.op;
+        cp.addr = cpu.addr;
+        cp.bmod = cpu.bmod;
+        cp.scr = cpu.scr;
+        cp.scr2 = cpu.scr2;
+
+        // A later checkpoint for the same instruction replaces the earlier one
+        if (last != null && last.count == cp.count)
+            checkpoints.remove(checkpoints.size()-1);
+        checkpoints.add(cp);
+        if (checkpoints.size() > MAX_CHECKPOINTS)
+            discard();
+
+        next = cp.count + interval;
+        forced = false;
+    }
+
+    // Discard the oldest checkpoint and the journal entries before the next one
+    void discard() {
+        checkpoints.remove(0);
+        Checkpoint first = checkpoints.get(0);
+        int w = first.writes, n = first.inputs;
+        System.arraycopy(writes, w, writes, 0, writeCount - w);
+        writeCount -= w;
+        System.arraycopy(inputs, n, inputs, 0, inputCount - n);
+        inputCount -= n;
+        for (Checkpoint cp : checkpoints) {
+            cp.writes -= w;
+            cp.inputs -= n;
+        }
+    }
+
+    /*
+     * Going back
+     */
+
+    // Find the instruction count of the last write to an address before the
+    // given count, or -1 if there is none in the journal
+    long lastWrite(int addr, long before) {
+        for (int i = writeCount-1; i >= 0; i--) {
+            long count = writes[i] >>> COUNT_SHIFT;
+            if ((writes[i] & WRITE_ADDR_MASK) == addr && count < before)
+                return count;
+        }
+        return -1;
+    }
+
+    // Go back to the state before the given instruction.  Returns false if
+    // there is no checkpoint early enough.
+    boolean goBack(long target) {
+        Checkpoint cp = null;
+        int index = checkpoints.size()-1;
+        for ( ; index >= 0; index--) {
+            cp = checkpoints.get(index);
+            if (cp.count <= target)
+                break;
+        }
+        if (index < 0)
+            return false;
+
+        // Discard the later checkpoints and restore the store and CPU state
+        while (checkpoints.size() > index+1)
+            checkpoints.remove(index+1);
+        for (int i = Store.STORE_START; i < Store.STORE_SIZE; i++) {
+            long value = cp.pages[i >> PAGE_BITS][i & (PAGE_SIZE-1)];
+            if (store.store[i] != value)
+                store.restoreWord(i, value);
+        }
+        for (int i = 0; i < PAGES; i++)
+            dirty[i] = false;
+
+        cpu.instructionCount = cp.count;
+        cpu.cycleCount = cp.cycles;
+        cpu.acc = cp.acc;
+        cpu.ar = cp.ar;
+        cpu.overflow = cp.overflow;
+        cpu.fpOverflow = cp.fpOverflow;
+        cpu.ir = cp.ir;
+        cpu.irx = cp.irx;
+        cpu.op = cp.op;
+        cpu.addr = cp.addr;
+        cpu.bmod = cp.bmod;
+        cpu.scr = cp.scr;
+        cpu.scr2 = cp.scr2;
+
+        // Obey the instructions again up to the target, recording the journal
+        // again as we go
+        writeCount = cp.writes;
+        replayEnd = inputCount;
+        inputCount = cp.inputs;
+        replay = cp.inputs;
+        cpu.replay(target);
+        replay = -1;
+        next = cp.count + interval;
+        return true;
+    }
+
+    static long[] grow(long[] array) {
+        long[] bigger = new long[array.length*2];
+        System.arraycopy(array, 0, bigger, 0, array.length);
+        return bigger;
+    }
+}
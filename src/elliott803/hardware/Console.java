@@ -50,6 +50,7 @@ public class Console extends Device {
         } else if (manualDataDelay) {
             manualData = true;
             manualDataDelay = false;
+            computer.idleClear();
         }
         return wordGen;
     }
@@ -63,6 +64,7 @@ public class Console extends Device {
     public void setWordGen(long value) {
         wordGen = value;
         viewWordGen();
+        computer.idleClear();
     }
 
     // Set a bit in the word generator, bit = 1 to 39
@@ -70,6 +72,7 @@ public class Console extends Device {
         if (bit > 0 && bit < 40) {
             wordGen |= 1L<<(bit-1);
             viewWordGen();
+            computer.idleClear();
         }
     }
 
@@ -78,6 +81,7 @@ public class Console extends Device {
         if (bit > 0 && bit < 40) {
             wordGen &= ~(1L<<(bit-1));
             viewWordGen();
+            computer.idleClear();
         }
     }
 
@@ -86,12 +90,14 @@ public class Console extends Device {
         if (bit > 0 && bit < 40) {
             wordGen ^= 1L<<(bit-1);
             viewWordGen();
+            computer.idleClear();
         }
     }
 
     // Set manual data status
     public void setManualData(boolean isManualData) {
         manualData = isManualData;
+        computer.idleClear();
     }
 
     // Set manual data on, but only after the next read
@@ -159,6 +165,7 @@ public class Console extends Device {
 
     // Operate - perform the last selected step-by-step action
     public void operate() {
+        computer.idleClear();
         if (deviceBusy()) {
             deviceReady();
         } else if (clearStore) {
@@ -189,6 +196,11 @@ public class Console extends Device {
     public int getVolume() {
         return speakerVol;
     }
+
+    // Check if the speaker is actually making any sound
+    public boolean isSpeakerOn() {
+        return speakerOn && speakerVol > 0 && view != null;
+    }
     
     // Make a sound on the speaker
     public void speakerSound(boolean click, int cycles) {
@@ -0,0 +1,146 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import elliott803.machine.Computer;
+import elliott803.machine.Word;
+
+/**
+ * A Floating Point Unit that works directly on the Elliott floating point format
+ * using integer arithmetic, rather than converting to and from Java doubles.
+ *
+ * An Elliott floating point number has a 30 bit two's complement mantissa and a 9 bit
+ * exponent (offset by 256).  Each operation forms the exact result as a long mantissa
+ * and a binary exponent, then normalises it and truncates it to 30 bits.  This avoids
+ * the rounding that can happen in the double arithmetic, so results are truncated in
+ * the same way as the real machine.  Unlike the basic FPU, division by zero sets
+ * floating point overflow.
+ *
+ * @author Baldwin
+ */
+public class IntegerFPU extends FPU {
+
+    static final int FRAC_BITS = 29;        // Fraction bits in a normalised mantissa
+    static final int EXP_BIAS = 256 + FRAC_BITS;
+    static final int EXP_MASK = 0x1FF;
+    static final long FRAC_MASK = 0x3FFFFFFF;
+
+    // Unpacked operands: the value is mantissa * 2^exponent
+    long m1, m2;
+    int x1, x2;
+
+    public IntegerFPU(Computer computer) {
+        super(computer);
+    }
+
+    /*
+     * Floating point operations
+     */
+
+    public long add(long n1, long n2) {
+        unpack(n1, n2);
+        return sum();
+    }
+
+    public long sub(long n1, long n2) {
+        unpack(n1, n2);
+        m2 = -m2;
+        return sum();
+    }
+
+    public long mul(long n1, long n2) {
+        // The product of two 30 bit mantissas fits easily in a long
+        unpack(n1, n2);
+        return makeFloat(m1 * m2, x1 + x2);
+    }
+
+    public long div(long n1, long n2) {
+        unpack(n1, n2);
+        if (m2 == 0) {      // Divide by zero
+            overflow = false;
+            fpOverflow = true;
+            return 0;
+        }
+
+        // Normalise both mantissas and shift the dividend up so the quotient will have
+        // more than 30 significant bits.  The division must round down (towards minus
+        // infinity) so the final truncation of the quotient is exact.
+        int s1 = FRAC_BITS - bitLength(m1);
+        int s2 = FRAC_BITS - bitLength(m2);
+        long a = (m1 << s1) << 32;
+        long b = m2 << s2;
+        long q = a / b;
+        if (a % b != 0 && (a ^ b) < 0)
+            q -= 1;
+        return makeFloat(q, (x1 - s1 - 32) - (x2 - s2));
+    }
+
+    public long convert(long n) {
+        return makeFloat(Word.getLong(n), 0);
+    }
+
+    // Add the two unpacked operands.  If the exponents are too far apart for the
+    // aligned mantissas to fit in a long, the smaller operand is shifted right first.
+    // This rounds down, so does not affect the final truncated result.
+    long sum() {
+        if (m1 == 0)
+            return makeFloat(m2, x2);
+        if (m2 == 0)
+            return makeFloat(m1, x1);
+
+        if (x1 < x2) {
+            long m = m1;  m1 = m2;  m2 = m;
+            int x = x1;  x1 = x2;  x2 = x;
+        }
+        int d = x1 - x2;
+        if (d > 32) {
+            m2 >>= Math.min(d-32, 63);
+            x2 = x1 - 32;
+            d = 32;
+        }
+        return makeFloat((m1 << d) + m2, x2);
+    }
+
+    // Split two Elliott floating point values into mantissa and exponent
+    void unpack(long n1, long n2) {
+        n1 = Word.getLong(n1);
+        m1 = n1 >> 9;
+        x1 = (int)(n1 & EXP_MASK) - EXP_BIAS;
+        n2 = Word.getLong(n2);
+        m2 = n2 >> 9;
+        x2 = (int)(n2 & EXP_MASK) - EXP_BIAS;
+    }
+
+    // Make a floating point result from the value m * 2^x.  Normalise the mantissa so
+    // it has exactly 29 significant bits (not counting the sign), truncating any extra
+    // bits, then check the exponent for overflow and underflow.
+    long makeFloat(long m, int x) {
+        overflow = fpOverflow = false;
+        if (m == 0)
+            return 0;
+
+        int s = bitLength(m) - FRAC_BITS;
+        if (s > 0) {
+            m >>= s;
+        } else {
+            m <<= -s;
+        }
+        int e = x + s + EXP_BIAS;
+
+        long result = 0;
+        if (e > EXP_MASK) {
+            fpOverflow = true;              // Overflow
+        } else if (e >= 0) {
+            result = ((m & FRAC_MASK) << 9) | e;
+        }                                   // Otherwise underflow to zero
+        return result;
+    }
+
+    // Number of significant bits in a value, excluding the sign
+    int bitLength(long n) {
+        return 64 - Long.numberOfLeadingZeros((n < 0) ? ~n : n);
+    }
+}
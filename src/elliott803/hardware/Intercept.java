@@ -0,0 +1,181 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.io.PrintStream;
+import java.util.Arrays;
+import java.util.List;
+
+import elliott803.machine.Instruction;
+
+/**
+ * A library routine that the CPU can run directly in Java rather than by
+ * obeying its instructions.
+ *
+ * An intercept is tied to the entry point of a routine at a fixed address and
+ * is only used while the store words holding the routine's code match a known
+ * checksum, so any other program that uses the same addresses is not affected.
+ * When a jump reaches the entry point the CPU calls the intercept instead of
+ * obeying the routine.  The intercept must leave the registers and store just
+ * as the routine would have done and charge exactly the cycles and instructions
+ * it would have taken, but each word the routine changes is only written once.
+ *
+ * An intercept can decline a call, for example if floating point overflow would
+ * stop the routine part way through, and the routine is then obeyed as normal.
+ *
+ * To check an intercept the CPU can run each call natively, keep the results and
+ * put the registers and store back, then obey the real routine and compare the
+ * results when it returns.
+ *
+ * @author Baldwin
+ */
+public abstract class Intercept {
+
+    String name;                    // Name of the routine
+    int addr, addr2;                // Entry point address and instruction
+    int start, end;                 // First and last words of the routine's code
+    long checksum;                  // Checksum of the code words
+
+    // Code words when last checked, and whether they matched the checksum
+    Store.Decoded[] code;
+    boolean present;
+
+    // Calls run natively and the cycles they took, and calls checked against
+    // the real routine
+    long calls, cycles;
+    long verified, failed;
+
+    // Results expected from the real routine while a call is being checked
+    long checkAcc, checkAr;
+    boolean checkOverflow;
+    int checkScr, checkScr2, checkCycles, checkInstructions;
+    long checkStart, checkCount;
+    long[] checkStore;
+
+    Intercept(String name, int addr, int addr2, int start, int end, long checksum) {
+        this.name = name;
+        this.addr = addr;
+        this.addr2 = addr2;
+        this.start = start;
+        this.end = end;
+        this.checksum = checksum;
+    }
+
+    // Run the routine.  This must set the registers, store, sequence control and
+    // 'cycles' in the CPU, with 'jump' set, and return the number of instructions
+    // the routine would have obeyed.  Returns 0, with nothing changed, to decline.
+    abstract int call(CPU cpu);
+
+    // Check the routine's code is in store.  The checksum is only worked out again
+    // once one of the code words has been written.
+    boolean isPresent(Store core) {
+        if (code != null) {
+            int i = 0;
+            while (i < code.length && code[i].valid)
+                i++;
+            if (i == code.length)
+                return present;
+        }
+        code = new Store.Decoded[end-start+1];
+        for (int i = 0; i < code.length; i++)
+            code[i] = core.decode(start+i);
+        present = (checksum(core, start, end) == checksum);
+        return present;
+    }
+
+    // Checksum of the store words from start to end inclusive
+    public static long checksum(Store core, int start, int end) {
+        long sum = 0;
+        for (int i = start; i <= end; i++)
+            sum = sum*31 + core.fetch(i);
+        return sum;
+    }
+
+    // Address of a B-modified instruction, or -1 if the modifier would change the
+    // op code or the address is one of the given work words, which the routine
+    // holds in Java variables rather than in store.
+    static int modify(int op, int addr, long b, int first, int last) {
+        int instr = Instruction.asInstr(op, addr) + (int)(b & 0x7FFFF);
+        int a = Instruction.getAddr(instr);
+        if (Instruction.getOp(instr) != op || (a >= first && a <= last))
+            return -1;
+        return a;
+    }
+
+    /*
+     * Checking against the real routine
+     */
+
+    // Run a call natively and keep the results, then put back the CPU and store
+    // so the real routine can be obeyed.  Returns false if the call was declined.
+    boolean checkStart(CPU cpu) {
+        Store core = cpu.computer.core;
+        long acc = cpu.acc, ar = cpu.ar;
+        boolean overflow = cpu.overflow, jump = cpu.jump;
+        int scr = cpu.scr, scr2 = cpu.scr2, cycles = cpu.cycles;
+        long[] before = core.store.clone();
+
+        int count = call(cpu);
+        if (count == 0)
+            return false;
+        checkAcc = cpu.acc;
+        checkAr = cpu.ar;
+        checkOverflow = cpu.overflow;
+        checkScr = cpu.scr;
+        checkScr2 = cpu.scr2;
+        checkCycles = cpu.cycles;
+        checkInstructions = count;
+        checkStore = core.store.clone();
+
+        for (int i = 0; i < before.length; i++) {
+            if (core.store[i] != before[i])
+                core.restoreWord(i, before[i]);
+        }
+        cpu.acc = acc;
+        cpu.ar = ar;
+        cpu.overflow = overflow;
+        cpu.jump = jump;
+        cpu.scr = scr;
+        cpu.scr2 = scr2;
+        cpu.cycles = cycles;
+        checkStart = cpu.cycleCount;
+        checkCount = cpu.instructionCount;
+        return true;
+    }
+
+    // Compare the results of the real routine with the native call once it has
+    // returned, which must be after exactly the expected number of cycles.  This
+    // is called at the start of each block and returns true once the check is
+    // complete.
+    boolean checkEnd(CPU cpu) {
+        long taken = cpu.cycleCount - checkStart;
+        if (taken < checkCycles)
+            return false;
+        boolean match = (taken == checkCycles) && cpu.scr == checkScr && cpu.scr2 == checkScr2
+                && cpu.acc == checkAcc && cpu.ar == checkAr && cpu.overflow == checkOverflow
+                && cpu.instructionCount - checkCount == checkInstructions
+                && Arrays.equals(cpu.computer.core.store, checkStore);
+        if (match) {
+            verified++;
+        } else {
+            failed++;
+            System.err.println("Intercept " + name + " did not match the routine at " + addr + "." + addr2);
+        }
+        checkStore = null;
+        return true;
+    }
+
+    /*
+     * Print a summary of the intercepts
+     */
+    public static void print(PrintStream out, List<Intercept> intercepts) {
+        out.println("       ROUTINE   ENTRY       CALLS        CYCLES    VERIFIED      FAILED");
+        for (Intercept i : intercepts) {
+            out.println(String.format("%14s  %4d.%d  %10d  %12d  %10d  %10d", i.name, i.addr, i.addr2,
+                        i.calls, i.cycles, i.verified, i.failed));
+        }
+    }
+}
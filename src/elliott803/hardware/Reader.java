@@ -37,6 +37,8 @@ public class Reader extends TapeDevice {
         inputTape = tape;
         viewTape(tape);
         deviceReady();
+        if (tape != null)
+            computer.idleClear();
     }
 
     // Read the next character
@@ -21,6 +21,30 @@ import elliott803.view.StoreView;
  */
 public class Store {
 
+    /*
+     * A store word split into its two instructions.  This saves the CPU from
+     * unpacking the same word again each time it is executed.
+     */
+    static class Decoded {
+        final long word;                // The original word
+        final int instr1, instr2;       // First and second instructions
+        final int op1, addr1;           // First instruction op code and address
+        final int op2, addr2;           // Second instruction op code and address
+        final boolean bmod;             // B digit set
+        boolean valid = true;           // Cleared when the word is written
+
+        Decoded(long word) {
+            this.word = word;
+            instr1 = Word.getInstr1(word);
+            instr2 = Word.getInstr2(word);
+            op1 = Instruction.getOp(instr1);
+            addr1 = Instruction.getAddr(instr1);
+            op2 = Instruction.getOp(instr2);
+            addr2 = Instruction.getAddr(instr2);
+            bmod = (Word.getB(word) != 0);
+        }
+    }
+
     static final int STORE_SIZE = 8*1024;          // 8K
     static final int STORE_START = 4;              // First writable location
 
@@ -29,15 +53,33 @@ public class Store {
     // Words are 39-bits - so we'll have to use Java longs to hold them
     long[] store = null;
 
+    // Pre-decoded instruction pairs.  A word is decoded the first time it is fetched
+    // as an instruction and the decoded form is kept until the word is next written.
+    Decoded[] decoded = null;
+
     int lastAddr;
     long lastValue;
 
+    // Count of writes that actually changed a word, used to detect idle loops
+    long changes;
+
+    // Count of data reads and writes at each address, for profiles and the
+    // store heat map
+    long[] reads, writes;
+    long writeCount;
+
+    // CPU checkpoints, or null
+    Checkpoints checkpoints;
+
     public Store(Computer computer) {
         this.computer = computer;
 
         // Default store size is 8K (4K versions were also available but it doesn't
         // really seem worth simulating that!).
         store = new long[STORE_SIZE];
+        decoded = new Decoded[STORE_SIZE];
+        reads = new long[STORE_SIZE];
+        writes = new long[STORE_SIZE];
 
         // Set the initial instructions.  The first four word of store contain some
         // hard-wired instructions.
@@ -51,14 +93,19 @@ public class Store {
     public void clear() {
         for (int i = STORE_START; i < STORE_SIZE; i++) {
             store[i] = 0;
+            invalidate(i);
             viewWord(i, 0);
         }
+        changes++;
+        if (checkpoints != null)
+            checkpoints.storeChanged();
     }
 
     // Read store
     // Used for reading data, returns 0 if used to read initial instructions
     public long read(int addr) {
         addr = Instruction.asAddr(addr);
+        reads[addr]++;
         if (addr >= STORE_START) {
             return store[addr];
         } else {
@@ -73,17 +120,69 @@ public class Store {
         return store[addr];
     }
 
-    // Write store, cannot overwrite initial instructions
+    // Decode store
+    // Used by the CPU to fetch instructions in their pre-decoded form
+    Decoded decode(int addr) {
+        addr = Instruction.asAddr(addr);
+        Decoded d = decoded[addr];
+        if (d == null) {
+            d = new Decoded(store[addr]);
+            decoded[addr] = d;
+        }
+        return d;
+    }
+
+    // Write store, cannot overwrite initial instructions.  Writing a word with
+    // the value it already has keeps its decoded form.
     public void write(int addr, long value) {
         addr = Instruction.asAddr(addr);
         if (addr >= STORE_START) {
-            store[addr] = value;
+            writes[addr]++;
+            writeCount++;
+            if (store[addr] != value) {
+                store[addr] = value;
+                invalidate(addr);
+                changes++;
+            }
+            if (checkpoints != null)
+                checkpoints.write(addr);
             lastAddr = addr;
             lastValue = value;
             viewWord(addr, value);
         }
     }
 
+    // Put back a word from a checkpoint.  This is not a write by the program.
+    void restoreWord(int addr, long value) {
+        store[addr] = value;
+        invalidate(addr);
+        changes++;
+        viewWord(addr, value);
+    }
+
+    // Discard the decoded form of a word that has changed
+    void invalidate(int addr) {
+        Decoded d = decoded[addr];
+        if (d != null) {
+            d.valid = false;
+            decoded[addr] = null;
+        }
+    }
+
+    // Counts of data reads and writes at each address since the computer was
+    // created.  These are updated without any locking.
+    public long[] getReads() {
+        return reads;
+    }
+
+    public long[] getWrites() {
+        return writes;
+    }
+
+    public long getWriteCount() {
+        return writeCount;
+    }
+
     // Dump
     public void dump(Dump dump) {
         dump.core = store;
@@ -91,6 +190,11 @@ public class Store {
     
     public void restore(Dump dump) {
         System.arraycopy(dump.core, STORE_START, store, STORE_START, STORE_SIZE-STORE_START);
+        for (int i = STORE_START; i < STORE_SIZE; i++)
+            invalidate(i);
+        changes++;
+        if (checkpoints != null)
+            checkpoints.storeChanged();
         viewStore(store);
     }
 
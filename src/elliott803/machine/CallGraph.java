@@ -0,0 +1,190 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encapsulates the information that makes up a call graph profile file.
+ *
+ * Subroutines are called with a 73 instruction, which stores the link, followed
+ * by a jump to the subroutine entry point.  They return with a jump a few words
+ * past the link, usually a 40 instruction B-modified by the stored link.  The
+ * profile follows these calls and returns with a shadow call stack and counts
+ * the simulated cycles taken in each distinct chain of calls.
+ *
+ * The chains of calls are held as a tree of nodes, each one a subroutine entry
+ * address called from its parent node.  Node 0 is the root, for code that is
+ * not in any called subroutine.
+ *
+ * @author Baldwin
+ */
+public class CallGraph implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int MAX_DEPTH = 1024;      // Deepest call stack followed
+    static final int RETURN_RANGE = 8;      // Furthest return from a link
+
+    // Identification
+    public String name;         // System name;
+    public String version;      // System version
+    public Date timestamp;      // Time-stamp of profile
+
+    // The call tree.  For each node the parent node, subroutine entry address,
+    // the number of times it was called and the cycles taken in the subroutine
+    // itself (not including the subroutines it called).
+    public int nodes;
+    public int[] parent;
+    public int[] entry;
+    public long[] calls;
+    public long[] cycles;
+
+    // Shadow call stack, only needed while the profile is being taken
+    transient HashMap<Long,Integer> children;
+    transient int[] stackNode, stackLink;
+    transient int depth, current, link;
+
+    public CallGraph(Computer computer) {
+        name = computer.name;
+        version = computer.version;
+        timestamp = new Date();
+        parent = new int[256];
+        entry = new int[256];
+        calls = new long[256];
+        cycles = new long[256];
+        nodes = 1;
+        children = new HashMap<Long,Integer>();
+        stackNode = new int[MAX_DEPTH+1];
+        stackLink = new int[MAX_DEPTH+1];
+        link = -1;
+    }
+
+    /*
+     * Count an instruction obeyed at an address.  The target is the new address
+     * if the instruction jumped, or -1.  Only a jump straight after a 73 is a
+     * call, as the link may also be stored for some other use.
+     */
+    public void count(int addr, int op, int target, int c) {
+        cycles[current] += c;
+        if (op == 073) {
+            link = addr;
+        } else {
+            int from = link;
+            link = -1;
+            if (target >= 0) {
+                if (from >= 0)
+                    call(target, from);
+                else
+                    exit(target);
+            }
+        }
+    }
+
+    // Call a subroutine from the current node.  Calls nested too deeply are
+    // not followed, their time goes to the deepest subroutine.
+    void call(int addr, int from) {
+        if (depth < MAX_DEPTH) {
+            Long key = ((long)current << 13) | addr;
+            Integer node = children.get(key);
+            if (node == null) {
+                node = addNode(current, addr);
+                children.put(key, node);
+            }
+            current = node;
+            calls[current]++;
+            depth++;
+            stackNode[depth] = current;
+            stackLink[depth] = from;
+        }
+    }
+
+    // Check if a jump is a return to any subroutine on the stack, in case some
+    // returns were missed.
+    void exit(int addr) {
+        for (int d = depth; d > 0; d--) {
+            int from = stackLink[d];
+            if (addr > from && addr <= from + RETURN_RANGE) {
+                depth = d-1;
+                current = stackNode[depth];
+                break;
+            }
+        }
+    }
+
+    int addNode(int from, int addr) {
+        if (nodes == entry.length) {
+            int size = 2*nodes;
+            parent = copyOf(parent, size);
+            entry = copyOf(entry, size);
+            calls = copyOf(calls, size);
+            cycles = copyOf(cycles, size);
+        }
+        parent[nodes] = from;
+        entry[nodes] = addr;
+        return nodes++;
+    }
+
+    static int[] copyOf(int[] a, int size) {
+        int[] b = new int[size];
+        System.arraycopy(a, 0, b, 0, Math.min(a.length, size));
+        return b;
+    }
+
+    static long[] copyOf(long[] a, int size) {
+        long[] b = new long[size];
+        System.arraycopy(a, 0, b, 0, Math.min(a.length, size));
+        return b;
+    }
+
+    /*
+     * Write a call graph file.
+     */
+    public void write() {
+        parent = copyOf(parent, nodes);
+        entry = copyOf(entry, nodes);
+        calls = copyOf(calls, nodes);
+        cycles = copyOf(cycles, nodes);
+        SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        String filename = "elliott-" + df.format(timestamp) + ".calls";
+        try {
+            OutputStream stream = new DeflaterOutputStream(new FileOutputStream(filename));
+            ObjectOutputStream out = new ObjectOutputStream(stream);
+            out.writeObject(this);
+            out.close();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    /*
+     * Read a call graph file.
+     */
+    public static CallGraph readCallGraph(File file) {
+        CallGraph graph = null;
+        try {
+            InputStream stream = new InflaterInputStream(new FileInputStream(file));
+            ObjectInputStream in = new ObjectInputStream(stream);
+            graph = (CallGraph)in.readObject();
+            in.close();
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+        return graph;
+    }
+}
@@ -5,13 +5,17 @@
  */
 package elliott803.machine;
 
+import java.util.List;
+
 import elliott803.hardware.ALU;
 import elliott803.hardware.CPU;
 import elliott803.hardware.Console;
 import elliott803.hardware.FPU;
+import elliott803.hardware.IntegerFPU;
 import elliott803.hardware.PaperTapeStation;
 import elliott803.hardware.Plotter;
 import elliott803.hardware.Store;
+import elliott803.machine.extension.ClockDevice;
 import elliott803.machine.extension.RandomNumberDevice;
 import elliott803.machine.extension.SimulatorControlDevice;
 
@@ -49,6 +53,9 @@ public class Computer extends Thread {
     boolean busyExit;
     boolean busyWait;
 
+    // Count of events that might end an "idle" loop
+    volatile int idleCount;
+
     /**
      * Construct a computer
      */
@@ -66,8 +73,9 @@ public class Computer extends Thread {
         }  
         
         // Lower the priority of the CPU thread a little.  803 programs often used tight
-        // spin loops to wait for console input or when they end and we don't want these
-        // tight loops to make the GUI seem unresponsive.
+        // spin loops to wait for console input or when they end.  The CPU detects the
+        // simplest of these and waits instead, but we still don't want other long
+        // running loops to make the GUI seem unresponsive.
         setName(name);
         setPriority(Math.max(Thread.MIN_PRIORITY, getPriority()/2));
         
@@ -89,8 +97,12 @@ public class Computer extends Thread {
         devices = new DeviceManager(this);
         devices.addControlDevice(plotter);
         devices.addControlDevice(new RandomNumberDevice());
+        devices.addControlDevice(new ClockDevice());
         devices.addControlDevice(new SimulatorControlDevice());
 
+        // The flight recorder is always on
+        setRecorder(FlightRecorder.DEFAULT_SIZE, 0);
+
         // And the control console - start in step-by-step mode
         console = new Console(this);
         console.setVolume(volume);
@@ -104,6 +116,7 @@ public class Computer extends Thread {
      * Signalling for the "busy wait" condition
      */
     public synchronized void busyWait() {
+        recorderEvent(FlightRecorder.BUSY);
         console.setBusy(true);
         if (busyExit) {
             cpu.exit();
@@ -127,9 +140,51 @@ public class Computer extends Thread {
         console.setBusy(false);
     }
 
+    /*
+     * Signalling for the "idle" condition.  The CPU is in a loop that cannot end
+     * until something outside the CPU changes, such as the word generator or a
+     * console button.  The caller passes the event count from before it decided
+     * it was idle, so an event that has happened since then is not lost.  A
+     * timeout of zero waits until an event occurs.
+     */
+    public int idleCount() {
+        return idleCount;
+    }
+
+    public synchronized void idleWait(int count, long timeout) {
+        if (busyExit) {
+            cpu.exit();
+        } else {
+            long end = System.currentTimeMillis() + timeout;
+            while (idleCount == count) {
+                long wait = (timeout == 0) ? 0 : end - System.currentTimeMillis();
+                if (timeout != 0 && wait <= 0)
+                    break;
+                try {
+                    wait(wait);
+                } catch (InterruptedException e) { }
+            }
+        }
+    }
+
+    public synchronized void idleClear() {
+        idleCount += 1;
+        notify();
+    }
+
     public void dump(Dump dump) {
         dump.busy = busyWait;
     }
+
+    /*
+     * Carry on from a dump taken earlier: the store, registers and counters are
+     * restored and the next run starts with the instruction that was current.
+     */
+    public void restore(Dump dump) {
+        cpu.reset();
+        core.restore(dump);
+        cpu.restore(dump);
+    }
     
     /*
      * Set the simulation to run at real 803B speed
@@ -141,6 +196,40 @@ public class Computer extends Thread {
         console.setSpeaker(rt);
     }
 
+    /*
+     * Select the floating point unit: either the standard one that uses Java
+     * double arithmetic, or one that uses integer arithmetic on the Elliott
+     * floating point format.
+     */
+    public void setIntegerFPU(boolean integer) {
+        fpu = integer ? new IntegerFPU(this) : new FPU(this);
+    }
+
+    /*
+     * Load binary tapes straight into store when they are read by the initial
+     * instructions, rather than a character at a time at reader speed.
+     */
+    public void setFastLoad(boolean enabled) {
+        cpu.setFastLoad(enabled);
+    }
+
+    /*
+     * Chain hot blocks of instructions together (the default), rather than
+     * returning to the main CPU loop after every block.
+     */
+    public void setChaining(boolean enabled) {
+        cpu.setChaining(enabled);
+    }
+
+    /*
+     * Run known ALGOL library routines directly in Java rather than obeying
+     * their instructions, optionally checking each call against the real
+     * routine.
+     */
+    public void setIntercepts(boolean enabled, boolean check) {
+        cpu.setIntercepts(enabled, check);
+    }
+
     /*
      * Run the simulation on the current thread, stopping if the system
      * enters a busy wait condition.  This is used by the command line 
@@ -203,6 +292,7 @@ public class Computer extends Thread {
      */
 
     Trace trace;
+    TraceFilter traceFilter;
 
     public void dump() {
         Dump dump = new Dump(this);
@@ -212,6 +302,9 @@ public class Computer extends Thread {
     public void traceStart() {
         if (trace == null) {
             trace = new Trace(this);
+            if (traceFilter != null)
+                traceFilter.reset();
+            trace.filter = traceFilter;
             cpu.trace(trace);
         }
     }
@@ -223,6 +316,157 @@ public class Computer extends Thread {
             trace = null;
         }
     }
+
+    /*
+     * Execution profile, counting instructions and cycles at each address
+     */
+
+    Profile profile;
+
+    public void profileStart() {
+        if (profile == null) {
+            profile = new Profile(this);
+            cpu.profile(profile);
+        }
+    }
+
+    public void profileStop() {
+        if (profile != null) {
+            cpu.profile(null);
+            profile.write(this);
+            profile = null;
+        }
+    }
+
+    /*
+     * Call graph profile, counting cycles in each chain of subroutine calls
+     */
+
+    CallGraph callGraph;
+
+    public void callGraphStart() {
+        if (callGraph == null) {
+            callGraph = new CallGraph(this);
+            cpu.callGraph(callGraph);
+        }
+    }
+
+    public void callGraphStop() {
+        if (callGraph != null) {
+            cpu.callGraph(null);
+            callGraph.write();
+            callGraph = null;
+        }
+    }
+
+    /*
+     * Code coverage, recording the instructions obeyed and the way jumps went
+     */
+
+    Coverage coverage;
+
+    public void coverageStart() {
+        if (coverage == null) {
+            coverage = new Coverage(this);
+            cpu.coverage(coverage);
+        }
+    }
+
+    public void coverageStop() {
+        if (coverage != null) {
+            cpu.coverage(null);
+            coverage.write(this);
+            coverage = null;
+        }
+    }
+
+    /*
+     * Profiling regions, opened and closed by the program being run
+     */
+
+    Regions regions;
+
+    public void regionOpen(long id) {
+        if (regions == null)
+            regions = new Regions(this);
+        regions.open(id);
+    }
+
+    public void regionClose(long id) {
+        if (regions != null)
+            regions.close(id);
+    }
+
+    // Totals for each region so far, or null if no regions have been used
+    public List<Regions.Region> getRegions() {
+        Regions r = regions;
+        return (r != null) ? r.getRegions() : null;
+    }
+
+    /*
+     * Sampling profiler, which can be written on demand while it runs
+     */
+
+    Sampler sampler;
+
+    public void samplerStart(int interval) {
+        if (sampler == null) {
+            sampler = new Sampler(this, interval);
+            cpu.setSampling(true);
+            sampler.start();
+        }
+    }
+
+    public void samplerStop() {
+        if (sampler != null) {
+            cpu.setSampling(false);
+            sampler.finish();
+            sampler.write();
+            sampler = null;
+        }
+    }
+
+    public void samplerWrite() {
+        if (sampler != null)
+            sampler.write();
+    }
+
+    public boolean isSampling() {
+        return sampler != null;
+    }
+
+    // Set a filter for any later traces, or null to trace everything
+    public void setTraceFilter(TraceFilter filter) {
+        traceFilter = filter;
+    }
+
+    public TraceFilter getTraceFilter() {
+        return traceFilter;
+    }
+
+    /*
+     * Flight recorder of the most recent instructions.  A size of zero turns
+     * the recorder off.
+     */
+
+    FlightRecorder recorder;
+
+    public void setRecorder(int size, int triggers) {
+        recorder = (size > 0) ? new FlightRecorder(this, size) : null;
+        if (recorder != null)
+            recorder.setTriggers(triggers);
+        cpu.setRecorder(recorder);
+    }
+
+    public void recorderWrite() {
+        if (recorder != null)
+            recorder.write();
+    }
+
+    public void recorderEvent(int event) {
+        if (recorder != null)
+            recorder.event(event);
+    }
     
     /*
      * Dummy constructor for unit tests
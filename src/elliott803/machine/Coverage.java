@@ -0,0 +1,121 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encapsulates the information that makes up a code coverage file.
+ *
+ * Each instruction is identified by its position, twice the store address plus
+ * one for the second instruction of the pair.  There is a bit for each position
+ * to show the instruction was obeyed, and for the conditional jumps (41 to 43
+ * and 45 to 47) bits to show if the jump was ever taken and ever not taken.
+ * A copy of the store is saved with the bits so the report can show the
+ * instructions.
+ *
+ * @author Baldwin
+ */
+public class Coverage implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    static final int POSITIONS = 2*(Instruction.ADDR_BITS+1);
+
+    // Identification
+    public String name;         // System name;
+    public String version;      // System version
+    public Date timestamp;      // Time-stamp of coverage
+
+    // Bits for each instruction position
+    public long[] executed;
+    public long[] taken;
+    public long[] notTaken;
+
+    // Store contents when the coverage was written
+    public long[] core;
+
+    public Coverage(Computer computer) {
+        name = computer.name;
+        version = computer.version;
+        timestamp = new Date();
+        executed = new long[POSITIONS/64];
+        taken = new long[POSITIONS/64];
+        notTaken = new long[POSITIONS/64];
+    }
+
+    // Record an instruction obeyed at an address, and whether it jumped
+    public void count(int addr, int scr2, int op, boolean jump) {
+        int pos = 2*addr + scr2;
+        executed[pos >> 6] |= 1L << pos;
+        if ((op & 070) == 040 && (op & 003) != 0) {
+            if (jump)
+                taken[pos >> 6] |= 1L << pos;
+            else
+                notTaken[pos >> 6] |= 1L << pos;
+        }
+    }
+
+    public boolean isExecuted(int addr, int scr2) {
+        return isSet(executed, 2*addr + scr2);
+    }
+
+    public boolean isTaken(int addr, int scr2) {
+        return isSet(taken, 2*addr + scr2);
+    }
+
+    public boolean isNotTaken(int addr, int scr2) {
+        return isSet(notTaken, 2*addr + scr2);
+    }
+
+    static boolean isSet(long[] bits, int pos) {
+        return (bits[pos >> 6] & (1L << pos)) != 0;
+    }
+
+    /*
+     * Write a coverage file.
+     */
+    public void write(Computer computer) {
+        core = new Dump(computer).core;
+        SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        String filename = "elliott-" + df.format(timestamp) + ".coverage";
+        try {
+            OutputStream stream = new DeflaterOutputStream(new FileOutputStream(filename));
+            ObjectOutputStream out = new ObjectOutputStream(stream);
+            out.writeObject(this);
+            out.close();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    /*
+     * Read a coverage file.
+     */
+    public static Coverage readCoverage(File file) {
+        Coverage coverage = null;
+        try {
+            InputStream stream = new InflaterInputStream(new FileInputStream(file));
+            ObjectInputStream in = new ObjectInputStream(stream);
+            coverage = (Coverage)in.readObject();
+            in.close();
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+        return coverage;
+    }
+}
@@ -5,6 +5,10 @@
  */
 package elliott803.machine;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileOutputStream;
@@ -16,6 +20,8 @@ import java.io.OutputStream;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
+import java.util.List;
+import java.util.zip.CRC32;
 import java.util.zip.DeflaterOutputStream;
 import java.util.zip.InflaterInputStream;
 
@@ -44,10 +50,21 @@ public class Dump implements Serializable {
     public int scr2;           // First/second instruction
     public boolean overflow;   // Overflow state;
     public boolean fpOverflow;
+    public long instructions;  // Instructions obeyed
+    public long cycles;        // Cycles taken
 
     // Storage
     public long[] core;        // Core store
 
+    // Totals for any profiling regions, or null
+    public List<Regions.Region> regions;
+
+    // For a snapshot, the checksum of the machine image it was started from
+    public long source;
+
+    Dump() {
+    }
+
     /*
      * Create a dump
      */
@@ -59,6 +76,7 @@ public class Dump implements Serializable {
         computer.dump(this);
         computer.cpu.dump(this);
         computer.core.dump(this);
+        regions = computer.getRegions();
     }
 
     /*
@@ -102,4 +120,93 @@ public class Dump implements Serializable {
         Dump dump = (Dump)in.readObject();
         return dump; 
     }
+
+    /*
+     * Checksum of a dump or machine image file: the file length and a CRC of its
+     * contents.  This is much quicker than reading the dump itself.
+     */
+    public static long checksum(File file) throws IOException {
+        CRC32 crc = new CRC32();
+        InputStream in = new FileInputStream(file);
+        try {
+            byte[] buffer = new byte[8192];
+            for (int n = in.read(buffer); n != -1; n = in.read(buffer))
+                crc.update(buffer, 0, n);
+        } finally {
+            in.close();
+        }
+        return (file.length() << 32) | crc.getValue();
+    }
+
+    /*
+     * Write and read a snapshot file.  This holds the same state as a dump but
+     * as plain binary data, with no compression or serialisation, so it can be
+     * read back quickly.  The header includes the checksum of the machine image
+     * the snapshot was started from.
+     */
+    static final int SNAPSHOT_MAGIC = 0x0E803504;
+
+    public void writeSnapshot(File file) {
+        try {
+            DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(SNAPSHOT_MAGIC);
+            out.writeLong(source);
+            out.writeUTF(name);
+            out.writeUTF(version);
+            out.writeLong(timestamp.getTime());
+            out.writeBoolean(busy);
+            out.writeLong(acc);
+            out.writeLong(ar);
+            out.writeLong(ir);
+            out.writeInt(ix);
+            out.writeInt(scr);
+            out.writeInt(scr2);
+            out.writeBoolean(overflow);
+            out.writeBoolean(fpOverflow);
+            out.writeLong(instructions);
+            out.writeLong(cycles);
+            out.writeInt(core.length);
+            for (long word : core)
+                out.writeLong(word);
+            out.close();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    public static Dump readSnapshot(File file) {
+        Dump dump = null;
+        try {
+            DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            try {
+                if (in.readInt() != SNAPSHOT_MAGIC)
+                    throw new IOException("Not a snapshot file: " + file);
+                dump = new Dump();
+                dump.source = in.readLong();
+                dump.name = in.readUTF();
+                dump.version = in.readUTF();
+                dump.timestamp = new Date(in.readLong());
+                dump.busy = in.readBoolean();
+                dump.acc = in.readLong();
+                dump.ar = in.readLong();
+                dump.ir = in.readLong();
+                dump.ix = in.readInt();
+                dump.scr = in.readInt();
+                dump.scr2 = in.readInt();
+                dump.overflow = in.readBoolean();
+                dump.fpOverflow = in.readBoolean();
+                dump.instructions = in.readLong();
+                dump.cycles = in.readLong();
+                dump.core = new long[in.readInt()];
+                for (int i = 0; i < dump.core.length; i++)
+                    dump.core[i] = in.readLong();
+            } finally {
+                in.close();
+            }
+        } catch (IOException e) {
+            System.err.println(e);
+            dump = null;
+        }
+        return dump;
+    }
 }
@@ -0,0 +1,121 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+/**
+ * A flight recorder of the most recent instructions obeyed by the CPU.
+ *
+ * The recorder is always on.  Each instruction is saved, with the accumulator
+ * and overflow, in a ring of primitive arrays so recording costs no more than a
+ * few array stores.  The recorder can be written to a file on demand, or when
+ * any of a chosen set of events happens, so the instructions leading up to a
+ * problem are available without having to run the program again with a full
+ * trace.
+ *
+ * Recorder files are written in the same format as trace files, named like
+ * "elliott-yyyyMMdd-HHmmss-SSS.flight", and can be formatted with PrintTrace.
+ *
+ * @author Baldwin
+ */
+public class FlightRecorder {
+
+    public static final int DEFAULT_SIZE = 4096;
+
+    // Events that can write the recorder
+    public static final int RESET = 1;          // CPU reset
+    public static final int OVERFLOW = 2;       // Floating point overflow wait
+    public static final int BUSY = 4;           // Busy wait on a peripheral
+    public static final int STOP = 8;           // Simulator control device stop
+    public static final int ALL = RESET | OVERFLOW | BUSY | STOP;
+
+    static final String[] EVENTS = { "reset", "overflow", "busy", "stop" };
+
+    Computer computer;
+    int triggers;
+
+    // The recorded instructions, 'count' is the total ever recorded
+    int mask;
+    int[] flags;
+    long[] ir, acc;
+    long count;
+    long written;
+
+    public FlightRecorder(Computer computer, int size) {
+        this.computer = computer;
+        int n = 1;
+        while (n < size)
+            n <<= 1;
+        mask = n-1;
+        flags = new int[n];
+        ir = new long[n];
+        acc = new long[n];
+    }
+
+    // Choose the events that write the recorder
+    public void setTriggers(int triggers) {
+        this.triggers = triggers;
+    }
+
+    // Parse a list of event names, such as "reset,stop", returns -1 if not valid
+    public static int parseTriggers(String list) {
+        int triggers = 0;
+        for (String name : list.split(",")) {
+            name = name.trim();
+            if (name.equals("all")) {
+                triggers |= ALL;
+            } else {
+                int t = 0;
+                for (int i = 0; i < EVENTS.length; i++) {
+                    if (EVENTS[i].equals(name))
+                        t = 1 << i;
+                }
+                if (t == 0)
+                    return -1;
+                triggers |= t;
+            }
+        }
+        return triggers;
+    }
+
+    // Record an instruction, called by the CPU before every instruction
+    public void record(int scr, int scr2, long ir, long acc, boolean oflow) {
+        int i = (int)(count++) & mask;
+        flags[i] = (scr << 2) | (scr2 << 1) | (oflow ? 1 : 0);
+        this.ir[i] = ir;
+        this.acc[i] = acc;
+    }
+
+    // An event has happened, write the recorder if asked to and if anything new
+    // has been recorded since the last time
+    public void event(int event) {
+        if ((triggers & event) != 0 && count != written)
+            write();
+    }
+
+    // Write the recorder to a file.  The instructions are copied while the CPU
+    // is held, so a running CPU can carry on while the file is written.
+    public void write() {
+        int n;
+        int[] f;
+        long[] i, a;
+        long start;
+        synchronized (computer.cpu) {
+            n = (int)Math.min(count, mask+1);
+            start = count - n;
+            f = flags.clone();
+            i = ir.clone();
+            a = acc.clone();
+            written = count;
+        }
+
+        Trace trace = new Trace(computer, "flight");
+        for (long c = start; c < start+n; c++) {
+            int x = (int)c & mask;
+            trace.trace(f[x] >> 2, (f[x] >> 1) & 1, i[x], a[x], (f[x] & 1) != 0);
+        }
+        trace.write();
+    }
+}
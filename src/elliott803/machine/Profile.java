@@ -0,0 +1,116 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+import java.util.zip.DeflaterOutputStream;
+import java.util.zip.InflaterInputStream;
+
+/**
+ * Encapsulates the information that makes up an execution profile file.
+ *
+ * For every store address the profile counts the instructions obeyed from
+ * that word and the simulated cycles they took, and the number of times the
+ * word was read and written as data.  A copy of the store is saved with the
+ * counts so the report can show the instructions and data values.
+ *
+ * @author Baldwin
+ */
+public class Profile implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    // Identification
+    public String name;         // System name;
+    public String version;      // System version
+    public Date timestamp;      // Time-stamp of profile
+
+    // Counts for each store address.  For a sampled profile the instruction
+    // counts are the number of samples and there are no cycle counts.
+    public long[] instructions;
+    public long[] cycles;
+    public boolean sampled;
+    public int interval;        // Sample interval in microseconds
+
+    // Data reads and writes at each store address, or null for a sampled profile
+    public long[] reads;
+    public long[] writes;
+
+    // Store contents when the profile was written
+    public long[] core;
+
+    public Profile(Computer computer) {
+        name = computer.name;
+        version = computer.version;
+        timestamp = new Date();
+        instructions = new long[Instruction.ADDR_BITS+1];
+        cycles = new long[Instruction.ADDR_BITS+1];
+        reads = computer.core.getReads().clone();
+        writes = computer.core.getWrites().clone();
+    }
+
+    // Count an instruction obeyed at an address
+    public void count(int addr, int c) {
+        instructions[addr]++;
+        cycles[addr] += c;
+    }
+
+    /*
+     * Write a profile file.
+     */
+    public void write(Computer computer) {
+        core = new Dump(computer).core;
+        if (sampled) {
+            reads = writes = null;
+        } else {
+            // Reads and writes since the profile was started
+            reads = difference(computer.core.getReads(), reads);
+            writes = difference(computer.core.getWrites(), writes);
+        }
+        SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        String filename = "elliott-" + df.format(timestamp) + ".profile";
+        try {
+            OutputStream stream = new DeflaterOutputStream(new FileOutputStream(filename));
+            ObjectOutputStream out = new ObjectOutputStream(stream);
+            out.writeObject(this);
+            out.close();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+    }
+
+    static long[] difference(long[] end, long[] start) {
+        long[] counts = new long[start.length];
+        for (int i = 0; i < counts.length; i++)
+            counts[i] = end[i] - start[i];
+        return counts;
+    }
+
+    /*
+     * Read a profile file.
+     */
+    public static Profile readProfile(File file) {
+        Profile profile = null;
+        try {
+            InputStream stream = new InflaterInputStream(new FileInputStream(file));
+            ObjectInputStream in = new ObjectInputStream(stream);
+            profile = (Profile)in.readObject();
+            in.close();
+        } catch (Exception e) {
+            System.err.println(e);
+        }
+        return profile;
+    }
+}
@@ -0,0 +1,130 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.io.PrintStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Profiling regions marked by a program.
+ *
+ * A program opens and closes a region with special 72 instructions, using the
+ * accumulator value to identify the region.  The instructions obeyed, cycles
+ * taken, store words written and characters read or written by the peripherals
+ * while a region is open are added to its totals.  Regions can be nested, so
+ * the totals of a region include those of any regions opened inside it.
+ *
+ * @author Baldwin
+ */
+public class Regions {
+
+    /*
+     * The totals for one region
+     */
+    public static class Region implements Serializable {
+        private static final long serialVersionUID = 1L;
+
+        public long id;                 // Accumulator value that identifies the region
+        public long count;              // Times the region was opened
+        public long instructions, cycles, writes, characters;
+
+        Region(long id) {
+            this.id = id;
+        }
+
+        Region(Region r) {
+            id = r.id;
+            count = r.count;
+            instructions = r.instructions;
+            cycles = r.cycles;
+            writes = r.writes;
+            characters = r.characters;
+        }
+
+        void add(long[] start, long[] end) {
+            instructions += end[0] - start[0];
+            cycles += end[1] - start[1];
+            writes += end[2] - start[2];
+            characters += end[3] - start[3];
+        }
+    }
+
+    static final int MAX_DEPTH = 64;        // Deepest nesting of open regions
+
+    Computer computer;
+    Map<Long,Region> regions;
+
+    // Regions that are open and the counters when they were opened
+    List<Region> open;
+    List<long[]> start;
+
+    public Regions(Computer computer) {
+        this.computer = computer;
+        regions = new LinkedHashMap<Long,Region>();
+        open = new ArrayList<Region>();
+        start = new ArrayList<long[]>();
+    }
+
+    // Open a region.  If too many regions are open they are all closed first.
+    public synchronized void open(long id) {
+        Region region = regions.get(id);
+        if (region == null) {
+            region = new Region(id);
+            regions.put(id, region);
+        }
+        region.count++;
+        if (open.size() == MAX_DEPTH)
+            close(open.get(0).id);
+        open.add(region);
+        start.add(counters());
+    }
+
+    // Close a region, and any regions opened inside it that are still open.
+    // Closing a region that is not open does nothing.
+    public synchronized void close(long id) {
+        int i = open.size();
+        while (i > 0 && open.get(i-1).id != id)
+            i--;
+        if (i > 0) {
+            long[] now = counters();
+            while (open.size() >= i) {
+                int last = open.size()-1;
+                open.remove(last).add(start.remove(last), now);
+            }
+        }
+    }
+
+    // Copy of the totals so far, including any regions that are still open
+    public synchronized List<Region> getRegions() {
+        Map<Long,Region> copy = new LinkedHashMap<Long,Region>();
+        for (Region region : regions.values())
+            copy.put(region.id, new Region(region));
+        long[] now = counters();
+        for (int i = 0; i < open.size(); i++)
+            copy.get(open.get(i).id).add(start.get(i), now);
+        return new ArrayList<Region>(copy.values());
+    }
+
+    long[] counters() {
+        return new long[] { computer.cpu.getInstructionCount(), computer.cpu.getCycleCount(),
+                            computer.core.getWriteCount(), computer.cpu.getCharacterCount() };
+    }
+
+    /*
+     * Print a summary of the regions
+     */
+    public static void print(PrintStream out, List<Region> regions) {
+        out.println("        REGION     ENTERED  INSTRUCTIONS        CYCLES      WRITES  CHARACTERS");
+        for (Region r : regions) {
+            out.println(String.format("%14s  %10d  %12d  %12d  %10d  %10d", Word.toIntegerString(r.id),
+                        r.count, r.instructions, r.cycles, r.writes, r.characters));
+        }
+    }
+}
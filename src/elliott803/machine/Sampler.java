@@ -0,0 +1,74 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A sampling profiler.
+ *
+ * A daemon thread looks at the address of the instruction the CPU is obeying
+ * at a fixed interval and counts how often each address is seen.  The CPU only
+ * has to publish the address of each instruction, so the profiler costs very
+ * little and can be left on for long runs.  The counts are written in the same
+ * form as an execution profile, so they can be printed with PrintProfile.
+ *
+ * @author Baldwin
+ */
+public class Sampler extends Thread {
+
+    public static final int DEFAULT_INTERVAL = 1000;    // 1ms, or 1kHz
+
+    Computer computer;
+    int interval;
+    long[] samples;
+    volatile boolean running;
+
+    public Sampler(Computer computer, int interval) {
+        super("Sampler");
+        setDaemon(true);
+        this.computer = computer;
+        this.interval = (interval > 0) ? interval : DEFAULT_INTERVAL;
+        samples = new long[Instruction.ADDR_BITS+1];
+        running = true;
+    }
+
+    // Take a sample every interval until stopped.  Nothing is counted while the
+    // CPU is stopped.
+    public void run() {
+        long nanos = interval*1000L;
+        while (running) {
+            LockSupport.parkNanos(nanos);
+            int position = computer.cpu.getPosition();
+            if (position >= 0) {
+                synchronized (this) {
+                    samples[position >> 1]++;
+                }
+            }
+        }
+    }
+
+    // Stop sampling and wait for the thread to end
+    public void finish() {
+        running = false;
+        try {
+            join();
+        } catch (InterruptedException e) {
+            System.err.println(e);
+        }
+    }
+
+    // Write the samples so far as a profile file
+    public void write() {
+        Profile profile = new Profile(computer);
+        synchronized (this) {
+            profile.instructions = samples.clone();
+        }
+        profile.sampled = true;
+        profile.interval = interval;
+        profile.write(computer);
+    }
+}
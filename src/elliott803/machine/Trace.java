@@ -5,6 +5,10 @@
  */
 package elliott803.machine;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
 import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
@@ -12,16 +16,31 @@ import java.io.FileOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 import java.io.Serializable;
 import java.text.SimpleDateFormat;
 import java.util.Date;
-import java.util.zip.DeflaterOutputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
 
 /**
  * Encapsulates the information that makes a trace file
  *
+ * The trace file is a small header followed by chunks of trace entries.  Each
+ * chunk is compressed on its own and holds its entries a field at a time: the
+ * address, instruction half and overflow packed into two bytes, then the five
+ * byte instruction pairs, then the five byte accumulator values.  Holding similar
+ * values together like this lets them compress much better.
+ *
+ * The CPU fills one buffer of entries while a background thread compresses and
+ * writes the other, so tracing does not hold up the CPU unless the disk cannot
+ * keep up.
+ *
+ * Older trace files, which hold serialized Entry objects, can still be read.
+ *
  * @author Baldwin
  */
 public class Trace implements Serializable {
@@ -29,6 +48,10 @@ public class Trace implements Serializable {
 
     static final int BUFFER_SIZE = 8192;
 
+    static final int MAGIC = 0x38303354;        // "803T"
+    static final int FORMAT = 1;
+    static final int ENTRY_BYTES = 12;
+
     public static class Entry implements Serializable {
         private static final long serialVersionUID = 1L;
 
@@ -46,65 +69,207 @@ public class Trace implements Serializable {
         }
     }
 
+    /*
+     * A chunk of trace entries held as primitive arrays
+     */
+    static class Chunk {
+        int count;
+        short[] flags = new short[BUFFER_SIZE];
+        long[] ir = new long[BUFFER_SIZE];
+        long[] acc = new long[BUFFER_SIZE];
+        byte[] data = new byte[BUFFER_SIZE*ENTRY_BYTES];
+        boolean last;
+
+        void add(int scr, int scr2, long ir, long acc, boolean oflow) {
+            flags[count] = (short)((scr << 2) | (scr2 << 1) | (oflow ? 1 : 0));
+            this.ir[count] = ir;
+            this.acc[count] = acc;
+            count++;
+        }
+
+        Entry get(int i) {
+            return new Entry(flags[i] >> 2 & 0x1FFF, flags[i] >> 1 & 1, ir[i], acc[i], (flags[i] & 1) != 0);
+        }
+
+        // Lay out the entries a field at a time ready for compression
+        int encode() {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                data[n++] = (byte)(flags[i] >> 8);
+                data[n++] = (byte)flags[i];
+            }
+            for (int i = 0; i < count; i++)
+                n = putWord(ir[i], n);
+            for (int i = 0; i < count; i++)
+                n = putWord(acc[i], n);
+            return n;
+        }
+
+        void decode() {
+            int n = 0;
+            for (int i = 0; i < count; i++) {
+                flags[i] = (short)(((data[n] & 0xFF) << 8) | (data[n+1] & 0xFF));
+                n += 2;
+            }
+            for (int i = 0; i < count; i++, n += 5)
+                ir[i] = getWord(n);
+            for (int i = 0; i < count; i++, n += 5)
+                acc[i] = getWord(n);
+        }
+
+        int putWord(long word, int n) {
+            for (int shift = 32; shift >= 0; shift -= 8)
+                data[n++] = (byte)(word >> shift);
+            return n;
+        }
+
+        long getWord(int n) {
+            long word = 0;
+            for (int i = 0; i < 5; i++)
+                word = (word << 8) | (data[n+i] & 0xFF);
+            return word;
+        }
+    }
+
     // Identification
     public String name;         // System name;
     public String version;      // System version
     public Date timestamp;      // Time-stamp of dump
 
-    transient Entry[] traceLog;
-    transient int maximum;
-    transient int position;
+    transient File file;
+    transient TraceFilter filter;
 
-    transient ObjectOutputStream out;
+    // Double buffering between the CPU and the writer thread
+    transient Chunk chunk;
+    transient BlockingQueue<Chunk> free, full;
+    transient Thread writer;
+
+    // Reading
+    transient DataInputStream data;
     transient ObjectInputStream in;
+    transient int position;
 
     public Trace(Computer computer) {
+        this(computer, "trace");
+    }
+
+    // Trace written to a file with a different file type
+    Trace(Computer computer, String type) {
         name = computer.name;
         version = computer.version;
         timestamp = new Date();
 
-        maximum = BUFFER_SIZE;
-        position = 0;
-        traceLog = new Entry[maximum];
+        SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
+        file = new File("elliott-" + df.format(timestamp) + "." + type);
+
+        free = new ArrayBlockingQueue<Chunk>(2);
+        full = new ArrayBlockingQueue<Chunk>(2);
+        free.add(new Chunk());
+        chunk = new Chunk();
+    }
+
+    // Trace read from a file
+    Trace() {
+    }
+
+    // Filter for the entries, or null
+    public TraceFilter getFilter() {
+        return filter;
     }
 
     // Log a new trace entry
     public void trace(int scr, int scr2, long ir, long acc, boolean oflow) {
-        if (position == maximum) {
+        if (chunk.count == BUFFER_SIZE)
             flush(false);
-            position = 0;
-        }
-        traceLog[position++] = new Entry(scr, scr2, ir, acc, oflow);
+        chunk.add(scr, scr2, ir, acc, oflow);
     }
 
     // Write and close the trace file
     public void write() {
         flush(true);
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            System.err.println(e);
+        }
     }
 
-    // Flush buffer to disk
+    // Pass the full buffer to the writer thread and carry on with the other one,
+    // waiting for the writer to finish with it if necessary.
     synchronized void flush(boolean close) {
-        if (out == null) {
-            SimpleDateFormat df = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS");
-            String filename = "elliott-" + df.format(timestamp) + ".trace";
+        if (writer == null) {
+            writer = new Thread("Trace") {
+                public void run() {
+                    writeChunks();
+                }
+            };
+            writer.setDaemon(true);
+            writer.start();
+        }
+        try {
+            chunk.last = close;
+            full.put(chunk);
+            chunk = close ? null : free.take();
+        } catch (InterruptedException e) {
+            System.err.println(e);
+        }
+    }
+
+    // Writer thread: compress and write each chunk as it is filled
+    void writeChunks() {
+        Deflater deflater = new Deflater();
+        byte[] buffer = new byte[BUFFER_SIZE*ENTRY_BYTES + 1024];
+        DataOutputStream out = null;
+        boolean last = false;
+        try {
+            out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file)));
+            out.writeInt(MAGIC);
+            out.writeInt(FORMAT);
+            out.writeUTF((name != null) ? name : "");
+            out.writeUTF((version != null) ? version : "");
+            out.writeLong(timestamp.getTime());
+        } catch (IOException e) {
+            System.err.println(e);
+            out = null;
+        }
+        while (!last) {
+            Chunk c;
             try {
-                FileOutputStream fout = new FileOutputStream(filename);
-                DeflaterOutputStream zout = new DeflaterOutputStream(fout);
-                out = new ObjectOutputStream(zout);
-                out.writeObject(this);
-            } catch (IOException e) {
+                c = full.take();
+            } catch (InterruptedException e) {
                 System.err.println(e);
+                break;
             }
+            last = c.last;
+            if (out != null && c.count > 0) {
+                try {
+                    deflater.reset();
+                    deflater.setInput(c.data, 0, c.encode());
+                    deflater.finish();
+                    int length = 0;
+                    while (!deflater.finished()) {
+                        if (length == buffer.length) {
+                            byte[] bigger = new byte[buffer.length*2];
+                            System.arraycopy(buffer, 0, bigger, 0, length);
+                            buffer = bigger;
+                        }
+                        length += deflater.deflate(buffer, length, buffer.length-length);
+                    }
+                    out.writeInt(c.count);
+                    out.writeInt(length);
+                    out.write(buffer, 0, length);
+                } catch (IOException e) {
+                    System.err.println(e);
+                    out = null;
+                }
+            }
+            c.count = 0;
+            free.offer(c);
         }
+        deflater.end();
         if (out != null) {
             try {
-                for (int i = 0; i < position; i++) {
-                    out.writeObject(traceLog[i]);
-                }
-                if (close) {
-                    out.close();
-                    out = null;
-                }
+                out.close();
             } catch (IOException e) {
                 System.err.println(e);
             }
@@ -114,7 +279,11 @@ public class Trace implements Serializable {
     // Return trace entries from saved trace file
     public Entry nextEntry() {
         Entry entry = null;
-        if (in != null) {
+        if (data != null) {
+            if (position == chunk.count && !readChunk())
+                return null;
+            entry = chunk.get(position++);
+        } else if (in != null) {
             try {
                 entry = (Entry)in.readObject();
             } catch (EOFException e) {
@@ -132,16 +301,62 @@ public class Trace implements Serializable {
         return entry;
     }
 
+    // Read and expand the next chunk, returns false at end of file
+    boolean readChunk() {
+        try {
+            int count = data.readInt();
+            if (count < 0 || count > BUFFER_SIZE)
+                throw new IOException("Trace file is damaged");
+            byte[] buffer = new byte[data.readInt()];
+            data.readFully(buffer);
+            Inflater inflater = new Inflater();
+            inflater.setInput(buffer);
+            int length = inflater.inflate(chunk.data, 0, count*ENTRY_BYTES);
+            inflater.end();
+            if (length != count*ENTRY_BYTES)
+                throw new IOException("Trace file is damaged");
+            chunk.count = count;
+            chunk.decode();
+            position = 0;
+            return true;
+        } catch (EOFException e) {
+            // End of file reached
+        } catch (IOException e) {
+            System.err.println(e);
+        } catch (DataFormatException e) {
+            System.err.println(e);
+        }
+        try {
+            data.close();
+        } catch (IOException e) {
+            System.err.println(e);
+        }
+        data = null;
+        return false;
+    }
+
     /*
      * Read a trace file
      */
     public static Trace readTrace(File file) {
         Trace trace = null;
         try {
-            InputStream stream = new InflaterInputStream(new FileInputStream(file));
-            ObjectInputStream in = new ObjectInputStream(stream);
-            trace = (Trace)in.readObject();
-            trace.in = in;
+            DataInputStream data = new DataInputStream(new BufferedInputStream(new FileInputStream(file)));
+            if (data.readInt() == MAGIC && data.readInt() == FORMAT) {
+                trace = new Trace();
+                trace.name = data.readUTF();
+                trace.version = data.readUTF();
+                trace.timestamp = new Date(data.readLong());
+                trace.data = data;
+                trace.chunk = new Chunk();
+            } else {
+                // Older trace file of serialized objects
+                data.close();
+                InputStream stream = new InflaterInputStream(new FileInputStream(file));
+                ObjectInputStream in = new ObjectInputStream(stream);
+                trace = (Trace)in.readObject();
+                trace.in = in;
+            }
         } catch (Exception e) {
             System.err.println(e);
         }
@@ -0,0 +1,137 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+/**
+ * A filter to limit the instructions written to a trace.
+ *
+ * A filter is written as a list of terms, separated by spaces or semicolons:
+ *
+ *   addr=range,...   only instructions at these addresses (eg 100-199,300)
+ *   group=g,...      only instructions in these groups (eg 4 for jumps, 7 for I/O)
+ *   acc<n, acc>n, acc=n, acc!=n
+ *                    only when the accumulator, as an integer, matches
+ *   sample=n         only every n'th instruction that passes the other terms
+ *   start=addr       start tracing when the instruction at addr is reached
+ *   stop=addr        stop tracing after the instruction at addr
+ *
+ * Without a filter the trace has an entry for each instruction pair.  With a
+ * filter each instruction is checked and has its own entry.
+ *
+ * @author Baldwin
+ */
+public class TraceFilter {
+
+    static final int ACC_NONE = 0, ACC_LT = 1, ACC_GT = 2, ACC_EQ = 3, ACC_NE = 4;
+
+    String text;
+
+    boolean[] addrs;                // Addresses to trace, or null for all
+    int groups = 0xFF;              // Bit mask of instruction groups to trace
+    int accTest = ACC_NONE;
+    long accValue;
+    int sample = 1;
+    int start = -1, stop = -1;
+
+    // Current state
+    boolean active;
+    int skip;
+
+    public TraceFilter(String text) {
+        this.text = text;
+        for (String term : text.trim().split("[\\s;]+")) {
+            if (term.length() == 0)
+                continue;
+            if (term.startsWith("acc")) {
+                parseAcc(term);
+                continue;
+            }
+            int eq = term.indexOf('=');
+            if (eq < 0)
+                throw new IllegalArgumentException("Incorrect trace filter: " + term);
+            String name = term.substring(0, eq);
+            String value = term.substring(eq+1);
+            if (name.equals("addr")) {
+                addrs = new boolean[Instruction.ADDR_BITS+1];
+                for (String range : value.split(",")) {
+                    int dash = range.indexOf('-');
+                    int from = Integer.parseInt(range.substring(0, (dash < 0) ? range.length() : dash));
+                    int to = (dash < 0) ? from : Integer.parseInt(range.substring(dash+1));
+                    for (int i = from; i <= to; i++)
+                        addrs[Instruction.asAddr(i)] = true;
+                }
+            } else if (name.equals("group")) {
+                groups = 0;
+                for (String g : value.split(","))
+                    groups |= 1 << (Integer.parseInt(g) & 7);
+            } else if (name.equals("sample")) {
+                sample = Math.max(1, Integer.parseInt(value));
+            } else if (name.equals("start")) {
+                start = Instruction.asAddr(Integer.parseInt(value));
+            } else if (name.equals("stop")) {
+                stop = Instruction.asAddr(Integer.parseInt(value));
+            } else {
+                throw new IllegalArgumentException("Incorrect trace filter: " + term);
+            }
+        }
+        reset();
+    }
+
+    // Back to the initial state, ready for a new trace
+    public void reset() {
+        active = (start == -1);
+        skip = 0;
+    }
+
+    void parseAcc(String term) {
+        String value;
+        if (term.startsWith("acc!=")) {
+            accTest = ACC_NE;  value = term.substring(5);
+        } else if (term.startsWith("acc<")) {
+            accTest = ACC_LT;  value = term.substring(4);
+        } else if (term.startsWith("acc>")) {
+            accTest = ACC_GT;  value = term.substring(4);
+        } else if (term.startsWith("acc=")) {
+            accTest = ACC_EQ;  value = term.substring(4);
+        } else {
+            throw new IllegalArgumentException("Incorrect trace filter: " + term);
+        }
+        accValue = Word.getLong(Word.parseInteger(value));
+    }
+
+    // Decide whether to trace the instruction about to be obeyed
+    public boolean accept(int scr, int op, long acc) {
+        if (scr == start)
+            active = true;
+        if (!active)
+            return false;
+        if (scr == stop)
+            active = false;
+        if (addrs != null && !addrs[scr])
+            return false;
+        if ((groups & (1 << (op >> 3))) == 0)
+            return false;
+        if (accTest != ACC_NONE) {
+            long a = Word.getLong(acc);
+            switch (accTest) {
+                case ACC_LT: if (a >= accValue) return false;  break;
+                case ACC_GT: if (a <= accValue) return false;  break;
+                case ACC_EQ: if (a != accValue) return false;  break;
+                case ACC_NE: if (a == accValue) return false;  break;
+            }
+        }
+        if (sample > 1) {
+            if (++skip < sample)
+                return false;
+            skip = 0;
+        }
+        return true;
+    }
+
+    public String toString() {
+        return text;
+    }
+}
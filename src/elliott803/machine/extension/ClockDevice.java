@@ -0,0 +1,60 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine.extension;
+
+import elliott803.hardware.device.ControlDevice;
+
+/**
+ * This is a special control device that lets a program time itself.  It can
+ * set the accumulator to the number of simulated CPU cycles (288us each) or
+ * the real elapsed time on the host since the computer was last reset.
+ *
+ * It responds to the following '75' instructions:
+ *
+ *  75 8004  - Set ACC to the simulated cycles since reset, low 38 bits
+ *  75 8005  - Set ACC to the host elapsed microseconds since reset, low 38 bits
+ *  75 8006  - Set ACC to the high bits of the cycles read by the last 75 8004
+ *  75 8007  - Set ACC to the high bits of the microseconds read by the last 75 8005
+ *
+ * All are positive integers.  The low 38 bits alone wrap round to zero after
+ * 2^38 cycles or microseconds (about 3 days for the microseconds), which is
+ * fine for timing anything shorter.  For longer times the low field is read
+ * first and then the high field, which comes from the same reading of the
+ * count so the two fields always match.
+ *
+ * @author Baldwin
+ */
+public class ClockDevice extends ControlDevice {
+
+    static final int CYCLES = 8004;
+    static final int MICROS = 8005;
+    static final int CYCLES_HIGH = 8006;
+    static final int MICROS_HIGH = 8007;
+
+    static final int LOW_BITS = 38;
+    static final long MASK = (1L<<LOW_BITS) - 1;
+
+    long cycles, micros;                // Counts from the last low field reads
+
+    public int addressBase() {
+        return CYCLES;
+    }
+
+    public int addressMask() {
+        return 0x1FFC;
+    }
+
+    public long controlRead(int addr) {
+        long value = 0;
+        switch (addr) {
+            case CYCLES:       value = cycles = computer.cpu.getCyclesSinceReset();  break;
+            case MICROS:       value = micros = computer.cpu.getTimeSinceReset();  break;
+            case CYCLES_HIGH:  value = cycles >>> LOW_BITS;  break;
+            case MICROS_HIGH:  value = micros >>> LOW_BITS;  break;
+        }
+        return value & MASK;
+    }
+}
@@ -6,6 +6,7 @@
 package elliott803.machine.extension;
 
 import elliott803.hardware.device.ControlDevice;
+import elliott803.machine.FlightRecorder;
 
 /**
  * This is a special control device that can perform actions on the
@@ -17,6 +18,10 @@ import elliott803.hardware.device.ControlDevice;
  *  72 8190  - Produce a core dump
  *  72 8189  - Enable instruction trace
  *  72 8188  - Disable instruction trace
+ *  72 8187  - Open the profiling region identified by ACC
+ *  72 8186  - Close the profiling region identified by ACC
+ *
+ * Addresses 8184 and 8185 are reserved.
  *
  * @author Baldwin
  */
@@ -26,22 +31,29 @@ public class SimulatorControlDevice extends ControlDevice {
     static final int DUMP = 8190;
     static final int TRACE_ON = 8189;
     static final int TRACE_OFF = 8188;
+    static final int REGION_OPEN = 8187;
+    static final int REGION_CLOSE = 8186;
 
     public int addressBase() {
-        return 8188;
+        return 8184;
     }
 
     public int addressMask() {
-        return 0x1FFC;
+        return 0x1FF8;
     }
 
     // Device control actions
     public void controlWrite(int addr, long acc) {
         switch (addr) {
-            case STOP:      computer.cpu.reset();   break;
+            case STOP:
+                computer.recorderEvent(FlightRecorder.STOP);
+                computer.cpu.reset();
+                break;
             case DUMP:      computer.dump();        break;
             case TRACE_ON:  computer.traceStart();  break;
             case TRACE_OFF: computer.traceStop();   break;
+            case REGION_OPEN:   computer.regionOpen(acc);   break;
+            case REGION_CLOSE:  computer.regionClose(acc);  break;
         }
     }
 }
@@ -11,7 +11,10 @@ import java.io.FileReader;
 import java.io.IOException;
 import java.io.LineNumberReader;
 import java.io.OutputStream;
+import java.io.PrintStream;
 import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
@@ -27,12 +30,16 @@ import elliott803.telecode.Telecode;
  * input file and create a binary tape suitable for loading by the initial instructions.
  *
  * Usage:
- *    Assemble inputfile outputtape
+ *    Assemble [-map mapfile] inputfile outputtape
  *
  * where:
  *    inputfile: is the assembler source input file name
  *    outputtape: is the binary tape output file name
  *
+ * options:
+ *    -map mapfile: write the address of each label to a map file, one per line
+ *                  as "addr label"
+ *
  * Assembler syntax is a sequence of lines.  Each line can have a one or more labels which 
  * correspond to the address of that line and then one of:
  *  - a directive
@@ -100,9 +107,12 @@ public class Assembler {
 
     public static void main(String[] args) throws Exception {
         // Handle parameters
-        Args parms = new Args("Assemble", "inputfile outputtape", args, null);
+        Args.Map options = Args.optionMap();
+        options.put("map", "mapfile");
+        Args parms = new Args("Assemble", "inputfile outputtape", args, options);
         File inputFile = parms.getInputFile(1);
         File outputFile = parms.getOutputFile(2);
+        File mapFile = parms.getOutputFile("map");
 
         // Check parameters
         if (inputFile == null || outputFile == null) {
@@ -118,12 +128,19 @@ public class Assembler {
         assembler.run();
         input.close();
         output.close();
+
+        // Write the map of labels
+        if (mapFile != null) {
+            PrintStream map = new PrintStream(mapFile);
+            assembler.writeMap(map);
+            map.close();
+        }
     }
 
     /*
      * Create an assembler
      */
-    Assembler(LineNumberReader in, OutputStream out) {
+    public Assembler(LineNumberReader in, OutputStream out) {
         input = in;
         output = out;
     }
@@ -161,7 +178,7 @@ public class Assembler {
     private SourceLine loadDirective, triggerDirective;
     private int loadAddress, triggerAddress;
 
-    void run() throws IOException {
+    public void run() throws IOException {
         // Pass 1: Read the input file and remove comments, blank lines etc.
         // Extract any labels found to build a symbol table and a set of source code
         // lines for the code to be generated.
@@ -350,6 +367,42 @@ public class Assembler {
         return Instruction.asInstr(op, addr);
     }
 
+    /*
+     * Source line number of the word assembled at an address, or 0 if the
+     * address is not part of the program
+     */
+    public int getLineNumber(int addr) {
+        int i = addr - loadAddress;
+        return (i >= 0 && i < sourceCode.size()) ? sourceCode.get(i).lineNo : 0;
+    }
+
+    /*
+     * Number of instructions written in the source of the word assembled at an
+     * address, 0 if it is not an instruction pair
+     */
+    public int getInstructionCount(int addr) {
+        int i = addr - loadAddress;
+        if (i < 0 || i >= sourceCode.size() || !sourceCode.get(i).source.matches(CODE_LINE))
+            return 0;
+        return sourceCode.get(i).source.matches(".*" + B_PATTERN + ".*") ? 2 : 1;
+    }
+
+    /*
+     * Write the address of each label, in address order
+     */
+    public void writeMap(PrintStream out) {
+        List<Map.Entry<String,Integer>> entries = new ArrayList<Map.Entry<String,Integer>>(symbols.entrySet());
+        Collections.sort(entries, new Comparator<Map.Entry<String,Integer>>() {
+            public int compare(Map.Entry<String,Integer> e1, Map.Entry<String,Integer> e2) {
+                int c = e1.getValue().compareTo(e2.getValue());
+                return (c != 0) ? c : e1.getKey().compareTo(e2.getKey());
+            }
+        });
+        for (Map.Entry<String,Integer> entry : entries) {
+            out.println(entry.getValue() + " " + entry.getKey());
+        }
+    }
+
     // Write the object code to the output tape
     private void writeOutputTape() throws IOException {
         // Write the load address first
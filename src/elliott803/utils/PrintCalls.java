@@ -0,0 +1,209 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.utils;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.IOException;
+import java.io.PrintStream;
+import java.text.DateFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.SortedMap;
+import java.util.TreeMap;
+
+import elliott803.machine.CallGraph;
+import elliott803.machine.Instruction;
+
+/**
+ * This class will print a subroutine report from a call graph profile
+ *
+ * Usage:
+ *    PrintCalls [-map mapfile] [-top count] [-collapsed] callsfile [outputfile]
+ *
+ * where:
+ *    callsfile: is the name of a call graph profile file
+ *    outputfile: is the name of the formatted output file, default is standard out.
+ *
+ * options:
+ *    -map mapfile: assembler map file to give names to subroutine addresses
+ *    -top count: number of subroutines to list (defaults to 50, 0 lists them all)
+ *    -collapsed: write collapsed stacks for flame graph tools instead of the report
+ *
+ * The subroutines are listed with the most inclusive cycles first:
+ *
+ *    AAAA:  nnnnnnn  nnnnnnnnnn  pp.p%  nnnnnnnnnn  pp.p%   name
+ *
+ * AAAA: is the subroutine entry address
+ * nnnnn: is the number of times it was called
+ * nnnnn pp.p%: are the cycles taken in it and the subroutines it called (inclusive)
+ * nnnnn pp.p%: are the cycles taken in the subroutine itself (exclusive)
+ * name: is the label at the entry address, if there is a map
+ *
+ * The collapsed stacks are one line for each chain of calls, with the names of
+ * the subroutines separated by semi-colons, followed by the cycles taken:
+ *
+ *    program;sub1;sub2 nnnnn
+ *
+ * @author Baldwin
+ */
+public class PrintCalls {
+
+    public static void main(String[] args) throws Exception {
+        // Handle parameters
+        Args.Map options = Args.optionMap();
+        options.put("map", "mapfile");
+        options.put("top", "count");
+        options.put("collapsed");
+        Args parms = new Args("PrintCalls", "callsfile [outputfile]", args, options);
+        File inputFile = parms.getInputFile(1);
+        File outputFile = parms.getOutputFile(2);
+        File mapFile = parms.getInputFile("map");
+        int top = parms.getInteger("top");
+        boolean collapsed = parms.getFlag("collapsed");
+
+        // Check parameters
+        if (inputFile == null) {
+            parms.usage();
+        }
+        if (top < 0) {
+            top = 50;
+        }
+
+        // Create input and output streams
+        PrintStream output = System.out;
+        if (outputFile != null) {
+            output = new PrintStream(outputFile);
+        }
+
+        // Read the call graph and symbols
+        CallGraph graph = CallGraph.readCallGraph(inputFile);
+        Map<Integer,String> symbols = new TreeMap<Integer,String>();
+        if (mapFile != null) {
+            symbols = readMap(mapFile);
+        }
+        DateFormat df = DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.LONG);
+
+        if (graph != null) {
+            PrintCalls printer = new PrintCalls(output, graph, symbols);
+            if (collapsed) {
+                printer.printCollapsed();
+            } else {
+                output.println("Elliott 803B Call Graph Profile");
+                output.println("created: " + df.format(graph.timestamp));
+                output.println();
+                printer.printSubroutines(top);
+            }
+        } else {
+            System.out.println("No call graph found");
+        }
+    }
+
+    /*
+     * Read an assembler map file of "addr label" lines
+     */
+    static TreeMap<Integer,String> readMap(File file) throws IOException {
+        TreeMap<Integer,String> symbols = new TreeMap<Integer,String>();
+        BufferedReader in = new BufferedReader(new FileReader(file));
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            String[] parts = line.trim().split("\\s+");
+            if (parts.length == 2 && parts[0].matches("\\d+")) {
+                int addr = Integer.parseInt(parts[0]);
+                if (!symbols.containsKey(addr))
+                    symbols.put(addr, parts[1]);
+            }
+        }
+        in.close();
+        return symbols;
+    }
+
+    PrintStream output;
+    CallGraph graph;
+    TreeMap<Integer,String> symbols;
+
+    PrintCalls(PrintStream out, CallGraph graph, Map<Integer,String> symbols) {
+        output = out;
+        this.graph = graph;
+        this.symbols = new TreeMap<Integer,String>(symbols);
+    }
+
+    // List the subroutines with the most inclusive cycles
+    void printSubroutines(int top) {
+        // Total cycles in each node and the subroutines it called.  Nodes are
+        // always created after their parent.
+        long[] total = graph.cycles.clone();
+        for (int n = graph.nodes-1; n > 0; n--)
+            total[graph.parent[n]] += total[n];
+
+        // Add up each subroutine, counting recursive calls just once
+        int size = Instruction.ADDR_BITS+1;
+        long[] calls = new long[size];
+        long[] inclusive = new long[size];
+        long[] exclusive = new long[size];
+        for (int n = 1; n < graph.nodes; n++) {
+            int addr = graph.entry[n];
+            calls[addr] += graph.calls[n];
+            exclusive[addr] += graph.cycles[n];
+            if (!isRecursive(n))
+                inclusive[addr] += total[n];
+        }
+        List<Integer> addrs = PrintProfile.sort(calls, inclusive);
+
+        output.println("Cycles:       " + total[0]);
+        output.println("Calls:        " + PrintProfile.total(calls));
+        output.println("Subroutines:  " + addrs.size());
+        output.println();
+        output.println("ADDR     CALLS         INCLUSIVE          EXCLUSIVE        NAME");
+        int count = 0;
+        for (int addr : addrs) {
+            if (top > 0 && count++ == top)
+                break;
+            output.print(Instruction.toAddrString(addr) + ":  ");
+            output.print(String.format("%8d", calls[addr]));
+            output.print(String.format("  %12d %5.1f%%", inclusive[addr],
+                                       PrintProfile.percent(inclusive[addr], total[0])));
+            output.print(String.format("  %12d %5.1f%%", exclusive[addr],
+                                       PrintProfile.percent(exclusive[addr], total[0])));
+            if (!symbols.isEmpty())
+                output.print("   " + getName(addr));
+            output.println();
+        }
+        output.println();
+    }
+
+    // Write each chain of calls and the cycles taken at the end of it
+    void printCollapsed() {
+        String[] stacks = new String[graph.nodes];
+        stacks[0] = "program";
+        for (int n = 0; n < graph.nodes; n++) {
+            if (n > 0)
+                stacks[n] = stacks[graph.parent[n]] + ";" + getName(graph.entry[n]);
+            if (graph.cycles[n] > 0)
+                output.println(stacks[n] + " " + graph.cycles[n]);
+        }
+    }
+
+    // Check if a node is a recursive call, with the same subroutine above it
+    boolean isRecursive(int node) {
+        for (int n = graph.parent[node]; n > 0; n = graph.parent[n]) {
+            if (graph.entry[n] == graph.entry[node])
+                return true;
+        }
+        return false;
+    }
+
+    // Name of an address, from the nearest label at or before it
+    String getName(int addr) {
+        SortedMap<Integer,String> labels = symbols.headMap(addr+1);
+        if (labels.isEmpty())
+            return Integer.toString(addr);
+        int label = labels.lastKey();
+        if (label == addr)
+            return labels.get(label);
+        return labels.get(label) + "+" + (addr - label);
+    }
+}
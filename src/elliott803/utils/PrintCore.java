@@ -11,6 +11,7 @@ import java.text.DateFormat;
 
 import elliott803.machine.Dump;
 import elliott803.machine.Instruction;
+import elliott803.machine.Regions;
 import elliott803.machine.Word;
 import elliott803.telecode.Telecode;
 
@@ -62,6 +63,11 @@ public class PrintCore {
             formatter.printCpu(dump);
             output.println("Core store:");
             formatter.printStore(dump.core, 0, 8192);
+            if (dump.regions != null) {
+                output.println("Profiling regions:");
+                Regions.print(output, dump.regions);
+                output.println();
+            }
         } else {
             System.out.println("No core dump found");
         }
@@ -0,0 +1,192 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.utils;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileReader;
+import java.io.LineNumberReader;
+import java.io.PrintStream;
+import java.text.DateFormat;
+
+import elliott803.machine.Coverage;
+import elliott803.machine.Instruction;
+import elliott803.machine.Word;
+
+/**
+ * This class will print a code coverage report
+ *
+ * Usage:
+ *    PrintCoverage [-source sourcefile] coveragefile [outputfile]
+ *
+ * where:
+ *    coveragefile: is the name of a code coverage file
+ *    outputfile: is the name of the formatted output file, default is standard out.
+ *
+ * options:
+ *    -source sourcefile: the assembler source of the program that was run
+ *
+ * Without a source file every word with an instruction obeyed is listed:
+ *
+ *    AAAA:  cc   OP1 ADDR1 b OP2 ADDR2
+ *
+ * With a source file every line of the source is listed:
+ *
+ *    LLLL  AAAA  cc   source
+ *
+ * AAAA: is the store address
+ * LLLL: is the source line number
+ * cc: shows the coverage of the first and second instruction, where
+ *     - is not obeyed
+ *     * is obeyed
+ *     B is a conditional jump that went both ways
+ *     T is a conditional jump that was always taken
+ *     N is a conditional jump that was never taken
+ *
+ * @author Baldwin
+ */
+public class PrintCoverage {
+
+    public static void main(String[] args) throws Exception {
+        // Handle parameters
+        Args.Map options = Args.optionMap();
+        options.put("source", "sourcefile");
+        Args parms = new Args("PrintCoverage", "coveragefile [outputfile]", args, options);
+        File inputFile = parms.getInputFile(1);
+        File outputFile = parms.getOutputFile(2);
+        File sourceFile = parms.getInputFile("source");
+
+        // Check parameters
+        if (inputFile == null) {
+            parms.usage();
+        }
+
+        // Create input and output streams
+        PrintStream output = System.out;
+        if (outputFile != null) {
+            output = new PrintStream(outputFile);
+        }
+
+        // Read the coverage
+        Coverage coverage = Coverage.readCoverage(inputFile);
+        DateFormat df = DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.LONG);
+
+        if (coverage != null) {
+            output.println("Elliott 803B Code Coverage");
+            output.println("created: " + df.format(coverage.timestamp));
+            output.println();
+            PrintCoverage printer = new PrintCoverage(output, coverage);
+            if (sourceFile != null)
+                printer.printSource(sourceFile);
+            else
+                printer.printStore();
+        } else {
+            System.out.println("No coverage found");
+        }
+    }
+
+    PrintStream output;
+    Coverage coverage;
+    int instructions, obeyed, jumps, bothWays;
+
+    PrintCoverage(PrintStream out, Coverage coverage) {
+        output = out;
+        this.coverage = coverage;
+    }
+
+    // List every word with an instruction obeyed
+    void printStore() {
+        StringBuilder text = new StringBuilder();
+        for (int addr = 0; addr <= Instruction.ADDR_BITS; addr++) {
+            if (coverage.isExecuted(addr, 0) || coverage.isExecuted(addr, 1)) {
+                text.append(Instruction.toAddrString(addr)).append(":  ");
+                text.append(getCover(addr, 0)).append(getCover(addr, 1));
+                if (coverage.core != null)
+                    text.append("   ").append(Word.toInstrString(coverage.core[addr]));
+                text.append(System.getProperty("line.separator"));
+            }
+        }
+        printSummary(false);
+        output.println("ADDR   COVER");
+        output.print(text);
+        output.println();
+    }
+
+    // List the program source with the coverage of each line of code
+    void printSource(File sourceFile) throws Exception {
+        // Assemble the source again to find where each line was loaded
+        LineNumberReader in = new LineNumberReader(new FileReader(sourceFile));
+        Assembler assembler = new Assembler(in, new ByteArrayOutputStream());
+        assembler.run();
+        in.close();
+        int[] lines = new int[Instruction.ADDR_BITS+1];
+        for (int addr = 0; addr <= Instruction.ADDR_BITS; addr++) {
+            int line = assembler.getLineNumber(addr);
+            if (line > 0 && assembler.getInstructionCount(addr) > 0)
+                lines[addr] = line;
+        }
+
+        // List each source line, with the address and coverage of any code
+        StringBuilder text = new StringBuilder();
+        in = new LineNumberReader(new FileReader(sourceFile));
+        int addr = 0;
+        for (String line = in.readLine(); line != null; line = in.readLine()) {
+            int lineNo = in.getLineNumber();
+            while (addr < Instruction.ADDR_BITS && lines[addr] < lineNo)
+                addr++;
+            text.append(String.format("%5d", lineNo));
+            if (lines[addr] == lineNo) {
+                text.append("  ").append(Instruction.toAddrString(addr)).append("  ");
+                text.append(getCover(addr, 0));
+                text.append((assembler.getInstructionCount(addr) == 2) ? getCover(addr, 1) : ' ');
+            } else {
+                text.append("          ");
+            }
+            text.append("   ").append(line);
+            text.append(System.getProperty("line.separator"));
+        }
+        in.close();
+        printSummary(true);
+        output.println(" LINE  ADDR  COVER");
+        output.print(text);
+        output.println();
+    }
+
+    void printSummary(boolean source) {
+        if (source)
+            output.println("Instructions:       " + obeyed + " of " + instructions + " obeyed");
+        else
+            output.println("Instructions:       " + obeyed + " obeyed");
+        output.println("Conditional jumps:  " + bothWays + " of " + jumps + " went both ways");
+        output.println();
+    }
+
+    // Coverage of an instruction, and count it for the summary
+    char getCover(int addr, int scr2) {
+        boolean taken = coverage.isTaken(addr, scr2);
+        boolean notTaken = coverage.isNotTaken(addr, scr2);
+        instructions++;
+        if (taken || notTaken || isConditional(addr, scr2))
+            jumps++;
+        if (!coverage.isExecuted(addr, scr2))
+            return '-';
+        obeyed++;
+        if (taken && notTaken) {
+            bothWays++;
+            return 'B';
+        }
+        return taken ? 'T' : notTaken ? 'N' : '*';
+    }
+
+    // Check if an instruction in store is a conditional jump
+    boolean isConditional(int addr, int scr2) {
+        if (coverage.core == null)
+            return false;
+        long word = coverage.core[addr];
+        int op = Instruction.getOp((scr2 == 0) ? Word.getInstr1(word) : Word.getInstr2(word));
+        return (op & 070) == 040 && (op & 003) != 0;
+    }
+}
@@ -0,0 +1,223 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.utils;
+
+import java.io.File;
+import java.io.PrintStream;
+import java.text.DateFormat;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+
+import elliott803.machine.Instruction;
+import elliott803.machine.Profile;
+import elliott803.machine.Word;
+
+/**
+ * This class will print a hot-spot report from an execution profile
+ *
+ * Usage:
+ *    PrintProfile [-top count] [-data] profilefile [outputfile]
+ *
+ * where:
+ *    profilefile: is the name of an execution profile file
+ *    outputfile: is the name of the formatted output file, default is standard out.
+ *
+ * options:
+ *    -top count: number of addresses to list (defaults to 50, 0 lists them all)
+ *    -data: list the data words read and written most often instead
+ *
+ * The addresses are listed with the most simulated cycles first:
+ *
+ *    AAAA:  nnnnnnnnn  pp.p%  nnnnnnnnnn  pp.p%   OP1 ADDR1 b OP2 ADDR2
+ *
+ * AAAA: is the store address
+ * nnnnn pp.p%: are the instructions obeyed at the address and percentage of the total
+ * nnnnn pp.p%: are the cycles taken at the address and percentage of the total
+ * OP1 etc: is the instruction pair held at the address
+ *
+ * For a sampled profile the addresses are listed with the most samples first,
+ * and there are no cycle counts.
+ *
+ * With the -data option the addresses are listed with the most data reads and
+ * writes first:
+ *
+ *    AAAA:  nnnnnnnnn  pp.p%  nnnnnnnnnn  pp.p%   [octal] (integer)
+ *
+ * AAAA: is the store address
+ * nnnnn pp.p%: are the reads from the address and percentage of all reads
+ * nnnnn pp.p%: are the writes to the address and percentage of all writes
+ * octal etc: is the value held at the address
+ *
+ * @author Baldwin
+ */
+public class PrintProfile {
+
+    public static void main(String[] args) throws Exception {
+        // Handle parameters
+        Args.Map options = Args.optionMap();
+        options.put("top", "count");
+        options.put("data");
+        Args parms = new Args("PrintProfile", "profilefile [outputfile]", args, options);
+        File inputFile = parms.getInputFile(1);
+        File outputFile = parms.getOutputFile(2);
+        int top = parms.getInteger("top");
+        boolean data = parms.getFlag("data");
+
+        // Check parameters
+        if (inputFile == null) {
+            parms.usage();
+        }
+        if (top < 0) {
+            top = 50;
+        }
+
+        // Create input and output streams
+        PrintStream output = System.out;
+        if (outputFile != null) {
+            output = new PrintStream(outputFile);
+        }
+
+        // Read the profile
+        Profile profile = Profile.readProfile(inputFile);
+        DateFormat df = DateFormat.getDateTimeInstance(DateFormat.LONG, DateFormat.LONG);
+
+        if (profile != null) {
+            output.println("Elliott 803B Execution Profile");
+            output.println("created: " + df.format(profile.timestamp));
+            output.println();
+            if (data)
+                new PrintProfile(output).printData(profile, top);
+            else if (profile.sampled)
+                new PrintProfile(output).printSamples(profile, top);
+            else
+                new PrintProfile(output).printHotSpots(profile, top);
+        } else {
+            System.out.println("No profile found");
+        }
+    }
+
+    PrintStream output;
+
+    PrintProfile(PrintStream out) {
+        output = out;
+    }
+
+    // List the addresses with the most cycles
+    void printHotSpots(Profile profile, int top) {
+        long instructions = total(profile.instructions);
+        long cycles = total(profile.cycles);
+        List<Integer> addrs = sort(profile.instructions, profile.cycles);
+
+        output.println("Instructions: " + instructions);
+        output.println("Cycles:       " + cycles);
+        output.println("Addresses:    " + addrs.size());
+        output.println();
+        output.println("ADDR   INSTRUCTIONS          CYCLES          CODE");
+        int count = 0;
+        for (int addr : addrs) {
+            if (top > 0 && count++ == top)
+                break;
+            output.print(Instruction.toAddrString(addr) + ":  ");
+            output.print(String.format("%12d %5.1f%%", profile.instructions[addr],
+                                       percent(profile.instructions[addr], instructions)));
+            output.print(String.format("  %12d %5.1f%%", profile.cycles[addr],
+                                       percent(profile.cycles[addr], cycles)));
+            if (profile.core != null)
+                output.print("   " + Word.toInstrString(profile.core[addr]));
+            output.println();
+        }
+        output.println();
+    }
+
+    // List the addresses with the most samples
+    void printSamples(Profile profile, int top) {
+        long samples = total(profile.instructions);
+        List<Integer> addrs = sort(profile.instructions, profile.instructions);
+
+        output.println("Samples:      " + samples);
+        output.println("Interval:     " + profile.interval + "us");
+        output.println("Addresses:    " + addrs.size());
+        output.println();
+        output.println("ADDR        SAMPLES          CODE");
+        int count = 0;
+        for (int addr : addrs) {
+            if (top > 0 && count++ == top)
+                break;
+            output.print(Instruction.toAddrString(addr) + ":  ");
+            output.print(String.format("%12d %5.1f%%", profile.instructions[addr],
+                                       percent(profile.instructions[addr], samples)));
+            if (profile.core != null)
+                output.print("   " + Word.toInstrString(profile.core[addr]));
+            output.println();
+        }
+        output.println();
+    }
+
+    // List the data words with the most reads and writes
+    void printData(Profile profile, int top) {
+        if (profile.reads == null) {
+            output.println("No data reads and writes in profile");
+            return;
+        }
+        long reads = total(profile.reads);
+        long writes = total(profile.writes);
+        long[] accesses = new long[profile.reads.length];
+        for (int i = 0; i < accesses.length; i++)
+            accesses[i] = profile.reads[i] + profile.writes[i];
+        List<Integer> addrs = sort(accesses, accesses);
+
+        output.println("Reads:        " + reads);
+        output.println("Writes:       " + writes);
+        output.println("Addresses:    " + addrs.size());
+        output.println();
+        output.println("ADDR          READS          WRITES          VALUE");
+        int count = 0;
+        for (int addr : addrs) {
+            if (top > 0 && count++ == top)
+                break;
+            output.print(Instruction.toAddrString(addr) + ":  ");
+            output.print(String.format("%12d %5.1f%%", profile.reads[addr],
+                                       percent(profile.reads[addr], reads)));
+            output.print(String.format("  %12d %5.1f%%", profile.writes[addr],
+                                       percent(profile.writes[addr], writes)));
+            if (profile.core != null) {
+                long word = profile.core[addr];
+                output.print("   [" + Word.toOctalString(word) + "] (" + Word.toIntegerString(word) + ")");
+            }
+            output.println();
+        }
+        output.println();
+    }
+
+    // Addresses with a count, sorted with the largest key first
+    static List<Integer> sort(long[] counts, final long[] key) {
+        List<Integer> addrs = new ArrayList<Integer>();
+        for (int i = 0; i < counts.length; i++) {
+            if (counts[i] > 0)
+                addrs.add(i);
+        }
+        Collections.sort(addrs, new Comparator<Integer>() {
+            public int compare(Integer a1, Integer a2) {
+                long c1 = key[a1], c2 = key[a2];
+                return (c1 > c2) ? -1 : (c1 < c2) ? 1 : a1.compareTo(a2);
+            }
+        });
+        return addrs;
+    }
+
+    static long total(long[] counts) {
+        long total = 0;
+        for (long c : counts)
+            total += c;
+        return total;
+    }
+
+    static double percent(long value, long total) {
+        return (total > 0) ? 100.0*value/total : 0;
+    }
+}
@@ -52,6 +52,14 @@ public class ConsoleView extends ViewFrame implements ActionListener, FocusListe
     JButton operate;
     DisplayWord wordgen;
 
+    // Latest state of the lights, saved until the next display refresh.  The block
+    // transfer and busy lights stay on for at least one refresh so that short
+    // transfers are still visible.
+    Object lock = new Object();
+    boolean isStep, blockTr, isBusy, isOverflow, isFpOver;
+    boolean blockTrSeen, busySeen;
+    boolean changed;
+
     public ConsoleView(Console console) {
         super("Operator Console", false);
         this.console = console;
@@ -103,6 +111,7 @@ public class ConsoleView extends ViewFrame implements ActionListener, FocusListe
         controls.add(Box.createVerticalStrut(10));
 
         console.setView(this);
+        addRefresh();
 
         Container content = getContentPane();
         content.setLayout(new BoxLayout(content, BoxLayout.X_AXIS));
@@ -142,6 +151,32 @@ public class ConsoleView extends ViewFrame implements ActionListener, FocusListe
     }
 
     public void updateLights(boolean isStep, boolean blockTr, boolean isBusy, boolean isOverflow, boolean isFpOver) {
+        synchronized (lock) {
+            this.isStep = isStep;
+            this.blockTr = blockTr;
+            this.isBusy = isBusy;
+            this.isOverflow = isOverflow;
+            this.isFpOver = isFpOver;
+            blockTrSeen |= blockTr;
+            busySeen |= isBusy;
+            changed = true;
+        }
+    }
+
+    protected void refresh() {
+        boolean isStep, blockTr, isBusy, isOverflow, isFpOver;
+        synchronized (lock) {
+            if (!changed)
+                return;
+            isStep = this.isStep;
+            blockTr = blockTrSeen;
+            isBusy = busySeen;
+            isOverflow = this.isOverflow;
+            isFpOver = this.isFpOver;
+            blockTrSeen = this.blockTr;
+            busySeen = this.isBusy;
+            changed = (blockTr != this.blockTr) || (isBusy != this.isBusy);
+        }
         lights.setStep(isStep);
         lights.setBlockTr(blockTr);
         lights.setBusy(isBusy);
@@ -20,6 +20,7 @@ import javax.swing.JPanel;
 import javax.swing.Timer;
 
 import elliott803.machine.Computer;
+import elliott803.machine.Sampler;
 import elliott803.view.component.DisplaySpeed;
 
 /**
@@ -36,6 +37,8 @@ public class ControlView extends ViewFrame implements ActionListener {
     Timer speedTimer;
     DisplaySpeed speed;
     JCheckBox realTime;
+    JCheckBox sampling;
+    JButton sampleWrite;
     
     public ControlView(Computer computer, ComputerView computerView) {
         super("Simulation Control", false);
@@ -68,6 +71,21 @@ public class ControlView extends ViewFrame implements ActionListener {
         sp.add(Box.createHorizontalGlue());
         sp.add(realTime);
         
+        // Sampling profiler
+        JPanel pp = new JPanel();
+        pp.setLayout(new BoxLayout(pp, BoxLayout.X_AXIS));
+        pp.setBorder(BorderFactory.createTitledBorder("Sampling Profile"));
+        sampling = new JCheckBox("Sample");
+        sampling.addActionListener(this);
+        sampleWrite = new JButton("Write");
+        sampleWrite.addActionListener(this);
+        pp.add(Box.createHorizontalStrut(5));
+        pp.add(sampling);
+        pp.add(Box.createHorizontalStrut(10));
+        pp.add(Box.createHorizontalGlue());
+        pp.add(sampleWrite);
+        pp.add(Box.createHorizontalStrut(5));
+
         // Timer to update CPU actual speed
         speedTimer = new Timer(2500, this);
         speedTimer.setInitialDelay(5000);
@@ -77,6 +95,7 @@ public class ControlView extends ViewFrame implements ActionListener {
         Container content = getContentPane();
         content.add(ip, BorderLayout.EAST);
         content.add(sp, BorderLayout.WEST);
+        content.add(pp, BorderLayout.SOUTH);
         pack();
         setVisible(true);
     }
@@ -92,6 +111,13 @@ public class ControlView extends ViewFrame implements ActionListener {
                 speed.setValue(sp);
         } else if (e.getSource() == realTime) {
             computer.setRealTime(realTime.isSelected());
+        } else if (e.getSource() == sampling) {
+            if (sampling.isSelected())
+                computer.samplerStart(Sampler.DEFAULT_INTERVAL);
+            else
+                computer.samplerStop();
+        } else if (e.getSource() == sampleWrite) {
+            computer.samplerWrite();
         }
     }
 }
@@ -6,6 +6,7 @@
 package elliott803.view;
 
 import java.awt.Container;
+import java.awt.Toolkit;
 import java.awt.event.ActionEvent;
 import java.awt.event.ActionListener;
 
@@ -15,8 +16,10 @@ import javax.swing.BoxLayout;
 import javax.swing.JCheckBox;
 import javax.swing.JInternalFrame;
 import javax.swing.JPanel;
+import javax.swing.JTextField;
 
 import elliott803.hardware.CPU;
+import elliott803.machine.TraceFilter;
 import elliott803.view.component.DeviceLight;
 import elliott803.view.component.DisplayAddress;
 import elliott803.view.component.DisplayInstruction;
@@ -32,6 +35,9 @@ import elliott803.view.component.PushButton;
 public class CpuView extends ViewFrame implements ActionListener {
     private static final long serialVersionUID = 1L;
 
+    // Instructions between checkpoints when going backwards is enabled
+    static final int CHECKPOINT_INTERVAL = 100000;
+
     CPU cpu;
 
     DisplayWord acc;
@@ -42,7 +48,23 @@ public class CpuView extends ViewFrame implements ActionListener {
     DeviceLight overflow;
     DeviceLight fpOverflow;
     PushButton dump;
+    PushButton recorder;
     JCheckBox trace;
+    JTextField traceFilter;
+    JCheckBox profile;
+    JCheckBox calls;
+    JCheckBox checkpoints;
+    JTextField backCount;
+    PushButton back;
+    JTextField writeAddr;
+    PushButton lastWrite;
+
+    // Latest CPU state, saved until the next display refresh
+    Object lock = new Object();
+    long a, x, instr;
+    int i, pc;
+    boolean over, fpOver, tracing;
+    boolean changed;
     
     public CpuView(CPU cpu) {
         super("CPU", false);
@@ -96,12 +118,47 @@ public class CpuView extends ViewFrame implements ActionListener {
         dump = new PushButton("Dump", true);
         dump.addActionListener(this);
         p4.add(dump);
+        recorder = new PushButton("Recorder", true);
+        recorder.addActionListener(this);
+        p4.add(recorder);
         p4.add(Box.createHorizontalGlue());
         trace = new JCheckBox("Trace");
         trace.addActionListener(this);
+        trace.setToolTipText("Trace filter, such as: addr=100-199 group=4 acc<0 sample=10 start=120 stop=150");
+        traceFilter = new JTextField(12);
+        traceFilter.setToolTipText(trace.getToolTipText());
         p4.add(trace);
+        p4.add(traceFilter);
+        profile = new JCheckBox("Profile");
+        profile.addActionListener(this);
+        p4.add(profile);
+        calls = new JCheckBox("Calls");
+        calls.addActionListener(this);
+        p4.add(calls);
+
+        JPanel p5 = new JPanel();
+        p5.setLayout(new BoxLayout(p5, BoxLayout.X_AXIS));
+        p5.setBorder(BorderFactory.createTitledBorder("Reverse"));
+        p5.setAlignmentX(LEFT_ALIGNMENT);
+        checkpoints = new JCheckBox("Checkpoints");
+        checkpoints.addActionListener(this);
+        back = new PushButton("Back", true);
+        back.addActionListener(this);
+        backCount = new JTextField("1", 6);
+        lastWrite = new PushButton("Last Write", true);
+        lastWrite.addActionListener(this);
+        writeAddr = new JTextField(5);
+        p5.add(checkpoints);
+        p5.add(Box.createHorizontalStrut(10));
+        p5.add(back);
+        p5.add(backCount);
+        p5.add(Box.createHorizontalStrut(10));
+        p5.add(lastWrite);
+        p5.add(writeAddr);
+        p5.add(Box.createHorizontalGlue());
 
         cpu.setView(this);
+        addRefresh();
 
         Container content = getContentPane();
         content.setLayout(new BoxLayout(content, BoxLayout.Y_AXIS));
@@ -110,6 +167,7 @@ public class CpuView extends ViewFrame implements ActionListener {
         content.add(p3);
         content.add(Box.createVerticalStrut(10));
         content.add(p4);
+        content.add(p5);
         pack();
         setVisible(true);
     }
@@ -121,11 +179,56 @@ public class CpuView extends ViewFrame implements ActionListener {
     public void actionPerformed(ActionEvent e) {
         if (e.getSource() == dump) {
             cpu.computer.dump();
+        } else if (e.getSource() == recorder) {
+            cpu.computer.recorderWrite();
         } else if (e.getSource() == trace) {
-            if (trace.isSelected())
-                cpu.computer.traceStart();
-            else
+            if (trace.isSelected()) {
+                if (setTraceFilter())
+                    cpu.computer.traceStart();
+                else
+                    trace.setSelected(false);
+            } else {
                 cpu.computer.traceStop();
+            }
+        } else if (e.getSource() == profile) {
+            if (profile.isSelected())
+                cpu.computer.profileStart();
+            else
+                cpu.computer.profileStop();
+        } else if (e.getSource() == calls) {
+            if (calls.isSelected())
+                cpu.computer.callGraphStart();
+            else
+                cpu.computer.callGraphStop();
+        } else if (e.getSource() == checkpoints) {
+            cpu.setCheckpoints(checkpoints.isSelected() ? CHECKPOINT_INTERVAL : 0);
+        } else if (e.getSource() == back) {
+            if (!cpu.stepBack(getNumber(backCount)))
+                Toolkit.getDefaultToolkit().beep();
+        } else if (e.getSource() == lastWrite) {
+            if (!cpu.stepBackToWrite(getNumber(writeAddr)))
+                Toolkit.getDefaultToolkit().beep();
+        }
+    }
+
+    // Set the trace filter from the text field, an empty field traces everything
+    boolean setTraceFilter() {
+        String text = traceFilter.getText().trim();
+        try {
+            cpu.computer.setTraceFilter((text.length() > 0) ? new TraceFilter(text) : null);
+            return true;
+        } catch (IllegalArgumentException e) {
+            Toolkit.getDefaultToolkit().beep();
+            return false;
+        }
+    }
+
+    // Number from a text field, or -1 if not valid
+    int getNumber(JTextField field) {
+        try {
+            return Integer.parseInt(field.getText().trim());
+        } catch (NumberFormatException e) {
+            return -1;
         }
     }
 
@@ -133,29 +236,48 @@ public class CpuView extends ViewFrame implements ActionListener {
      * GUI Visualisation
      */
 
-    // These updates slow down processing a lot, so ensure they do nothing if the
-    // view window is not displayed.
+    // These are called by the CPU, so simply save the new state.  The display is
+    // updated on the next refresh.
     
     public void updateRegisters(long a, long x, int i, int pc, long instr) {
-        if (!isIcon()) {
-            acc.setValue(a);
-            ar.setValue(x);
-            ir.setValue(i);
-            scr.setValue(pc);
-            iw.setValue(instr);
+        synchronized (lock) {
+            this.a = a;  this.x = x;  this.i = i;  this.pc = pc;  this.instr = instr;
+            changed = true;
         }
     }
 
     public void updateFlags(boolean over, boolean fpOver) {
-        if (!isIcon()) {
-            overflow.setValue(over);
-            fpOverflow.setValue(fpOver);
+        synchronized (lock) {
+            this.over = over;  this.fpOver = fpOver;
+            changed = true;
         }
     }
     
     public void updateTrace(boolean enabled) {
-        if (!isIcon()) {
-            trace.setSelected(enabled);
+        synchronized (lock) {
+            tracing = enabled;
+            changed = true;
+        }
+    }
+
+    protected void refresh() {
+        long a, x, instr;
+        int i, pc;
+        boolean over, fpOver, tracing;
+        synchronized (lock) {
+            if (!changed)
+                return;
+            a = this.a;  x = this.x;  i = this.i;  pc = this.pc;  instr = this.instr;
+            over = this.over;  fpOver = this.fpOver;  tracing = this.tracing;
+            changed = false;
         }
+        acc.setValue(a);
+        ar.setValue(x);
+        ir.setValue(i);
+        scr.setValue(pc);
+        iw.setValue(instr);
+        overflow.setValue(over);
+        fpOverflow.setValue(fpOver);
+        trace.setSelected(tracing);
     }
 }
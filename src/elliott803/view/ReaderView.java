@@ -5,12 +5,17 @@
  */
 package elliott803.view;
 
+import java.awt.BorderLayout;
+import java.awt.event.ActionEvent;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.IOException;
 import java.io.InputStream;
 
+import javax.swing.BorderFactory;
+import javax.swing.JCheckBox;
+
 import elliott803.hardware.Reader;
 import elliott803.telecode.Telecode;
 import elliott803.telecode.TelecodeInputStream;
@@ -26,11 +31,29 @@ public class ReaderView extends TapeDeviceView {
     private static final long serialVersionUID = 1L;
 
     Reader reader;
+    JCheckBox fastLoad;
 
     public ReaderView(Reader reader, int id) {
         super("Reader", "Input", TapeDeviceView.DEV_LOAD, id);
         this.reader = reader;
         reader.setView(this);
+
+        // Binary tapes read by the initial instructions are always in reader 1
+        if (id == 1) {
+            fastLoad = new JCheckBox("Fast load");
+            fastLoad.setBorder(BorderFactory.createEmptyBorder(0, 5, 0, 5));
+            fastLoad.addActionListener(this);
+            getContentPane().add(fastLoad, BorderLayout.CENTER);
+            pack();
+        }
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        if (e.getSource() == fastLoad) {
+            reader.computer.setFastLoad(fastLoad.isSelected());
+        } else {
+            super.actionPerformed(e);
+        }
     }
 
     // Need to implement setTape to handle new tape loaded
@@ -7,10 +7,13 @@ package elliott803.view;
 
 import java.awt.BorderLayout;
 import java.awt.Container;
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
 
 import javax.swing.BorderFactory;
 import javax.swing.Box;
 import javax.swing.BoxLayout;
+import javax.swing.JCheckBox;
 import javax.swing.JInternalFrame;
 import javax.swing.JPanel;
 
@@ -25,10 +28,12 @@ import elliott803.view.component.DisplayWord;
  * Not really much to see in the store, but to give a view of what's going on we'll display
  * a blocks of 128x64 pixels representing the 8K words of store.  A pixel will be toggled
  * on/off each time a word is written.  The last stored value will also be displayed.
+ * Alternatively the pixels can show a heat map of how often each word is being read
+ * and written.
  * 
  * @author Baldwin
  */
-public class StoreView extends ViewFrame {
+public class StoreView extends ViewFrame implements ActionListener {
     private static final long serialVersionUID = 1L;
 
     Store store;
@@ -36,6 +41,13 @@ public class StoreView extends ViewFrame {
     DisplayCore coreStore;
     DisplayWord lastValue;
     DisplayAddress lastAddr;
+    JCheckBox heatMap;
+
+    // Range of addresses written since the last display refresh
+    Object lock = new Object();
+    int dirtyLow, dirtyHigh;
+    int addr;
+    long value;
 
     public StoreView(Store store) {
         super("Core Store", false);
@@ -44,6 +56,9 @@ public class StoreView extends ViewFrame {
         coreStore = new DisplayCore();
         lastAddr = new DisplayAddress("Write");
         lastValue = new DisplayWord(DisplayWord.Type.OCTAL);
+        heatMap = new JCheckBox("Heat");
+        heatMap.setToolTipText("Show how often each word is read and written");
+        heatMap.addActionListener(this);
 
         JPanel p1 = new JPanel();
         p1.setBorder(BorderFactory.createTitledBorder("Core"));
@@ -57,8 +72,12 @@ public class StoreView extends ViewFrame {
         p2.add(lastAddr);
         p2.add(Box.createHorizontalStrut(5));
         p2.add(lastValue);
+        p2.add(Box.createHorizontalStrut(5));
+        p2.add(heatMap);
         
+        clearDirty();
         store.setView(this);
+        addRefresh();
 
         Container content = getContentPane();
         content.add(p1, BorderLayout.CENTER);
@@ -71,20 +90,52 @@ public class StoreView extends ViewFrame {
      * GUI Visualisation
      */
 
-    // These updates slow down processing a lot, so ensure they do nothing if the
-    // view window is not displayed.
+    // These are called for every store write, so they just update the core display
+    // data and record the range of addresses that has changed.  The display is
+    // repainted on the next refresh.
     
     public void updateCore(int addr, long value) {
-        if (!isIcon()) {
-            coreStore.setValue(addr, value);
-            lastAddr.setValue(addr);
-            lastValue.setValue(value);
+        synchronized (lock) {
+            coreStore.updateValue(addr, value);
+            dirtyLow = Math.min(dirtyLow, addr);
+            dirtyHigh = Math.max(dirtyHigh, addr);
+            this.addr = addr;
+            this.value = value;
         }
     }
     
     public void updateCore(long[] store) {
-        if (!isIcon()) {
+        synchronized (lock) {
             coreStore.setValues(store);
         }
     }
+
+    protected void refresh() {
+        if (coreStore.isHeatMap())
+            coreStore.updateHeat(store.getReads(), store.getWrites());
+
+        int low, high, addr;
+        long value;
+        synchronized (lock) {
+            if (dirtyLow > dirtyHigh)
+                return;
+            low = dirtyLow;  high = dirtyHigh;
+            addr = this.addr;  value = this.value;
+            clearDirty();
+        }
+        coreStore.repaintRange(low, high);
+        lastAddr.setValue(addr);
+        lastValue.setValue(value);
+    }
+
+    public void actionPerformed(ActionEvent e) {
+        if (e.getSource() == heatMap) {
+            coreStore.setHeatMap(heatMap.isSelected());
+        }
+    }
+
+    void clearDirty() {
+        dirtyLow = Integer.MAX_VALUE;
+        dirtyHigh = -1;
+    }
 }
@@ -5,15 +5,32 @@
  */
 package elliott803.view;
 
+import java.awt.event.ActionEvent;
+import java.awt.event.ActionListener;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
 import javax.swing.BorderFactory;
 import javax.swing.JInternalFrame;
+import javax.swing.Timer;
 
 /**
  * Base class for the internal window elements/
+ *
+ * Views that show the state of the running computer do not update their display
+ * directly when the state changes, as this would mean calling Swing from the CPU
+ * thread for every instruction.  Instead they save the latest state and a single
+ * timer, shared by all views, refreshes the displays at a fixed rate on the event
+ * dispatch thread.
  */
 public class ViewFrame extends JInternalFrame {
     private static final long serialVersionUID = 1L;
-    
+
+    static final int REFRESH_RATE = 40;     // Display refreshes per second
+
+    static List<ViewFrame> refreshViews = new CopyOnWriteArrayList<ViewFrame>();
+    static Timer refreshTimer;
+
     public ViewFrame(String title, boolean resize) {
         super(title, resize, false, resize, true);
 
@@ -24,4 +41,27 @@ public class ViewFrame extends JInternalFrame {
             setBorder(BorderFactory.createCompoundBorder(BorderFactory.createEmptyBorder(1,1,1,1), getBorder()));
         }    
     }
+
+    // Add this view to the set refreshed by the timer, starting the timer if needed
+    protected void addRefresh() {
+        refreshViews.add(this);
+        synchronized (refreshViews) {
+            if (refreshTimer == null) {
+                refreshTimer = new Timer(1000/REFRESH_RATE, new ActionListener() {
+                    public void actionPerformed(ActionEvent e) {
+                        for (ViewFrame view : refreshViews) {
+                            if (!view.isIcon())
+                                view.refresh();
+                        }
+                    }
+                });
+                refreshTimer.start();
+            }
+        }
+    }
+
+    // Update the display from the saved state.  Called on the event dispatch thread,
+    // but only while the view is not iconified.
+    protected void refresh() {
+    }
 }
@@ -1,7 +1,7 @@
 /**
  * Elliott Model 803B Simulator
  *
- * (C) Copyright Tim Baldwin 2009,2010
+ * (C) Copyright Tim Baldwin 2009,2013
  */
 package elliott803.view.component;
 
@@ -16,6 +16,9 @@ import javax.swing.JPanel;
  * Display 8K words of store as a 128 x 64 matrix of dots.  Toggle the colour
  * of a dot when the content of a storage address is changed.
  *
+ * As a heat map the colour of a dot shows how often the word has been read or
+ * written recently, from white for no accesses through yellow to dark red.
+ *
  * @author Baldwin
  */
 public class DisplayCore extends JPanel {
@@ -29,15 +32,44 @@ public class DisplayCore extends JPanel {
 
     byte[][] store = new byte[ROWCOUNT][ROWSIZE];
 
+    // Heat map of recent reads and writes.  The heat of a word is 0 to 255 and
+    // fades away unless the word keeps being accessed.
+    static final int HEAT_LEVELS = 16;
+    static final Color[] HEAT_COLOURS = new Color[HEAT_LEVELS];
+    static {
+        HEAT_COLOURS[0] = Color.WHITE;
+        for (int i = 1; i < HEAT_LEVELS; i++) {
+            float f = (float)(i-1)/(HEAT_LEVELS-2);
+            HEAT_COLOURS[i] = new Color(1.0f-0.5f*f, 1.0f-0.9f*f, 0.6f-0.6f*f);
+        }
+    }
+
+    boolean heatMap, started;
+    int[] heat = new int[STORESIZE];
+    long[] accesses = new long[STORESIZE];
+
     public DisplayCore() {
         setPreferredSize(new Dimension(ROWSIZE*BLOCKSIZE, ROWCOUNT*BLOCKSIZE));
     }
 
     public void setValue(int addr, long value) {
+        updateValue(addr, value);
+        int i = addr%ROWSIZE, j = addr/ROWSIZE;
+        repaint(BLOCKSIZE*i, BLOCKSIZE*j, BLOCKSIZE, BLOCKSIZE);
+    }
+
+    // Update the value of a word without repainting.  The caller must call
+    // repaintRange() later.
+    public void updateValue(int addr, long value) {
         int i = addr%ROWSIZE, j = addr/ROWSIZE;
         byte b = (byte)((value == 0) ? 0 : store[j][i] + 1);
         store[j][i] = b;
-        repaint(BLOCKSIZE*i, BLOCKSIZE*j, BLOCKSIZE, BLOCKSIZE);
+    }
+
+    // Repaint the rows that hold a range of addresses
+    public void repaintRange(int low, int high) {
+        int j1 = low/ROWSIZE, j2 = high/ROWSIZE;
+        repaint(0, BLOCKSIZE*j1, BLOCKSIZE*ROWSIZE, BLOCKSIZE*(j2-j1+1));
     }
     
     public void setValues(long[] core) {
@@ -48,6 +80,41 @@ public class DisplayCore extends JPanel {
         repaint();
     }
 
+    // Switch between the heat map and showing changes
+    public void setHeatMap(boolean heatMap) {
+        this.heatMap = heatMap;
+        started = false;
+        repaint();
+    }
+
+    public boolean isHeatMap() {
+        return heatMap;
+    }
+
+    // Update the heat map from the counts of reads and writes at each address,
+    // repainting if anything has changed.  The first update after the heat map
+    // is switched on just notes the counts.
+    public void updateHeat(long[] reads, long[] writes) {
+        boolean changed = false;
+        for (int addr = 0; addr < STORESIZE; addr++) {
+            long count = reads[addr] + writes[addr];
+            long n = started ? count - accesses[addr] : 0;
+            accesses[addr] = count;
+            int h = heat[addr]*15/16;
+            if (n > 0) {
+                int level = 128 + 16*(63 - Long.numberOfLeadingZeros(n));
+                h = Math.max(h, Math.min(level, 255));
+            }
+            if (h != heat[addr]) {
+                heat[addr] = h;
+                changed = true;
+            }
+        }
+        started = true;
+        if (changed)
+            repaint();
+    }
+
     public void paintComponent(Graphics g) {
         super.paintComponent(g);
         
@@ -64,8 +131,12 @@ public class DisplayCore extends JPanel {
         int startX = minI*BLOCKSIZE, startY = minJ*BLOCKSIZE;
         for (int j = minJ, y = startY; j < maxJ; j++) {
             for (int i = minI, x = startX; i < maxI; i++) {
-                byte b = store[j][i];
-                g.setColor((b == 0) ? Color.WHITE : ((b&1) == 0) ? Color.DARK_GRAY : Color.LIGHT_GRAY);
+                if (heatMap) {
+                    g.setColor(HEAT_COLOURS[heat[j*ROWSIZE+i]*HEAT_LEVELS/256]);
+                } else {
+                    byte b = store[j][i];
+                    g.setColor((b == 0) ? Color.WHITE : ((b&1) == 0) ? Color.DARK_GRAY : Color.LIGHT_GRAY);
+                }
                 g.fillRect(x, y, BLOCKSIZE, BLOCKSIZE);
                 x += BLOCKSIZE;
             }
@@ -0,0 +1,139 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.math.BigInteger;
+import java.util.Random;
+
+import junit.framework.TestCase;
+import elliott803.machine.Computer;
+import elliott803.machine.Word;
+
+/**
+ * JUnit tests for the ALU class.
+ *
+ * The double length functions are checked against the same calculations done
+ * using BigInteger arithmetic.
+ *
+ * @author Baldwin
+ */
+public class TestALU extends TestCase {
+
+    static long MAX = Word.INT_MASK;            // Largest positive 39 bit value
+    static long MIN = -MAX-1;                   // Largest negative 39 bit value
+
+    static long[] VALUES = { 0, 1, -1, 2, -2, 3, 65535, -65536, 0x7FFFF, 0x80000,
+                             MAX, MIN, MAX-1, MIN+1, MAX/3, MIN/3, 1L<<37, -(1L<<37) };
+    static long[] EXTENSIONS = { 0, 1, 0x7FFFF, 0x80000, MAX, MAX-1, 1L<<37 };
+
+    protected void setUp() throws Exception {
+        alu = new ALU(new Computer(true));
+        random = new Random(803);
+    }
+
+    ALU alu;
+    Random random;
+
+    public void testMul() throws Exception {
+        for (long n1 : VALUES)
+            for (long n2 : VALUES)
+                checkMul(n1, n2);
+        for (int i = 0; i < 10000; i++)
+            checkMul(randomWord(), randomWord());
+    }
+
+    public void testLongMul() throws Exception {
+        for (long n1 : VALUES)
+            for (long n2 : VALUES)
+                checkLongMul(n1, n2);
+        for (int i = 0; i < 10000; i++)
+            checkLongMul(randomWord(), randomWord());
+    }
+
+    public void testLongDiv() throws Exception {
+        for (long n1 : VALUES)
+            for (long nx : EXTENSIONS)
+                for (long n2 : VALUES)
+                    checkLongDiv(n1, nx, n2);
+        for (int i = 0; i < 10000; i++)
+            checkLongDiv(randomWord(), randomExtension(), randomWord());
+    }
+
+    public void testLongShift() throws Exception {
+        for (long n1 : VALUES) {
+            for (long nx : EXTENSIONS) {
+                for (int n = 0; n < 128; n++) {
+                    checkLongShl(n1, nx, n);
+                    checkLongShr(n1, nx, n);
+                }
+            }
+        }
+        for (int i = 0; i < 10000; i++) {
+            int n = random.nextInt(128);
+            checkLongShl(randomWord(), randomExtension(), n);
+            checkLongShr(randomWord(), randomExtension(), n);
+        }
+    }
+
+    void checkMul(long n1, long n2) {
+        BigInteger result = big(n1).multiply(big(n2));
+        long n = alu.mul(Word.asInteger(n1), Word.asInteger(n2));
+        assertEquals(Word.asInteger(result.longValue()), n);
+        assertEquals(result.bitLength() > 38, alu.isOverflow());
+    }
+
+    void checkLongMul(long n1, long n2) {
+        BigInteger result = big(n1).multiply(big(n2));
+        long n = alu.longMul(Word.asInteger(n1), Word.asInteger(n2));
+        checkLong2(result, n);
+    }
+
+    void checkLongDiv(long n1, long nx, long n2) {
+        long n = alu.longDiv(Word.asInteger(n1), nx, Word.asInteger(n2));
+        if (n2 == 0) {
+            assertTrue(alu.isOverflow());
+        } else {
+            BigInteger result = big(n1, nx).divide(big(n2));
+            assertEquals(Word.asInteger(result.longValue()), n);
+            assertEquals(0, alu.getExtension());
+            assertEquals(result.bitLength() > 76, alu.isOverflow());
+        }
+    }
+
+    void checkLongShl(long n1, long nx, int s) {
+        BigInteger result = big(n1, nx).shiftLeft(s);
+        long n = alu.longShl(Word.asInteger(n1), nx, s);
+        checkLong2(result, n);
+    }
+
+    void checkLongShr(long n1, long nx, int s) {
+        BigInteger result = big(n1, nx).shiftRight(s);
+        long n = alu.longShr(Word.asInteger(n1), nx, s);
+        checkLong2(result, n);
+    }
+
+    void checkLong2(BigInteger result, long n) {
+        assertEquals(Word.asInteger(result.shiftRight(38).longValue()), n);
+        assertEquals(Word.asExtension(result.longValue()), alu.getExtension());
+        assertEquals(result.bitLength() > 76, alu.isOverflow());
+    }
+
+    long randomWord() {
+        return random.nextLong() >> (25 + random.nextInt(39));
+    }
+
+    long randomExtension() {
+        return random.nextLong() & MAX;
+    }
+
+    BigInteger big(long n) {
+        return BigInteger.valueOf(n);
+    }
+
+    BigInteger big(long n, long nx) {
+        return BigInteger.valueOf(n).shiftLeft(38).or(BigInteger.valueOf(nx));
+    }
+}
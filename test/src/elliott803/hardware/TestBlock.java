@@ -0,0 +1,218 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import junit.framework.TestCase;
+import elliott803.machine.Computer;
+import elliott803.machine.Instruction;
+import elliott803.machine.Word;
+
+/**
+ * JUnit tests for block execution.  Each program is run in blocks on one
+ * computer and one instruction at a time on another, and the two must end up
+ * in exactly the same state.
+ *
+ * @author Baldwin
+ */
+public class TestBlock extends TestCase {
+
+    /*
+     * A console that always has the speaker on, and records the sounds made
+     * as click/cycles pairs.
+     */
+    static class SpeakerConsole extends Console {
+        List<Integer> sounds = new ArrayList<Integer>();
+
+        SpeakerConsole(Computer computer) {
+            super(computer);
+        }
+
+        public boolean isSpeakerOn() {
+            return true;
+        }
+
+        public void speakerSound(boolean click, int cycles) {
+            sounds.add(click ? -cycles-1 : cycles);
+        }
+    }
+
+    static long instr(int op1, int addr1, int op2, int addr2) {
+        return Word.asInstr(Instruction.asInstr(op1, addr1), 0, Instruction.asInstr(op2, addr2));
+    }
+
+    static long bmod(int op1, int addr1, int op2, int addr2) {
+        return Word.asInstr(Instruction.asInstr(op1, addr1), 1, Instruction.asInstr(op2, addr2));
+    }
+
+    // Create a computer with a program starting at 100 and any data words, as
+    // address/value pairs, and jump to the start of the program
+    Computer create(long[] program, long[] data, boolean speaker) {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        if (speaker)
+            computer.console = new SpeakerConsole(computer);
+        computer.console.setWordGen(12345);
+        for (int i = 0; i < program.length; i++)
+            computer.core.write(100+i, program[i]);
+        for (int i = 0; i < data.length; i += 2)
+            computer.core.write((int)data[i], data[i+1]);
+        computer.cpu.setInstruction(Instruction.asInstr(040, 100));
+        computer.cpu.obey();
+        return computer;
+    }
+
+    // Run a number of blocks, then obey the same number of instructions one at
+    // a time, and check the results are the same.  Returns the computer that
+    // ran the blocks.
+    Computer compare(long[] program, long[] data, int blocks, boolean speaker) {
+        Computer fast = create(program, data, speaker);
+        for (int i = 0; i < blocks; i++)
+            fast.cpu.runBlock();
+
+        Computer slow = create(program, data, speaker);
+        while (slow.cpu.instructionCount < fast.cpu.instructionCount)
+            slow.cpu.obey();
+
+        assertTrue(Arrays.equals(slow.core.store, fast.core.store));
+        assertEquals(slow.cpu.acc, fast.cpu.acc);
+        assertEquals(slow.cpu.ar, fast.cpu.ar);
+        assertEquals(slow.cpu.overflow, fast.cpu.overflow);
+        assertEquals(slow.cpu.fpOverflow, fast.cpu.fpOverflow);
+        assertEquals(slow.cpu.scr, fast.cpu.scr);
+        assertEquals(slow.cpu.scr2, fast.cpu.scr2);
+        assertEquals(slow.cpu.irx, fast.cpu.irx);
+        assertEquals(slow.cpu.instructionCount, fast.cpu.instructionCount);
+        assertEquals(slow.cpu.cycleCount, fast.cpu.cycleCount);
+        if (speaker)
+            assertEquals(((SpeakerConsole)slow.console).sounds, ((SpeakerConsole)fast.console).sounds);
+        return fast;
+    }
+
+    public void testLoop() throws Exception {
+        long[] program = {
+            instr(022, 200, 030, 200),
+            instr(004, 201, 020, 201),
+            instr(040, 100, 000, 0),
+        };
+        Computer fast = compare(program, new long[0], 50, false);
+        assertTrue(fast.core.read(200) > 50);
+    }
+
+    // The first instruction rewrites a later word of the same block, which must
+    // be obeyed as it is after the write
+    public void testWriteLaterWord() throws Exception {
+        long[] program = {
+            instr(030, 300, 020, 102),
+            instr(022, 200, 022, 200),
+            instr(022, 201, 022, 201),
+            instr(040, 100, 000, 0),
+        };
+        long[] data = { 300, instr(022, 202, 022, 202) };
+        Computer fast = compare(program, data, 30, false);
+        assertEquals(0, fast.core.read(201));
+        assertTrue(fast.core.read(202) > 0);
+    }
+
+    // The first instruction of a word rewrites the same word, so the second
+    // instruction must be the new one
+    public void testWriteCurrentWord() throws Exception {
+        long[] program = {
+            instr(030, 300, 022, 200),
+            instr(020, 101, 022, 201),
+            instr(040, 102, 000, 0),
+            instr(030, 301, 020, 101),
+            instr(040, 100, 000, 0),
+        };
+        long[] data = { 300, instr(020, 101, 022, 202), 301, instr(020, 101, 022, 201) };
+        Computer fast = compare(program, data, 30, false);
+        assertEquals(0, fast.core.read(201));
+        assertTrue(fast.core.read(202) > 0);
+    }
+
+    // A B-modified second instruction that becomes a jump
+    public void testModifiedJump() throws Exception {
+        long[] program = {
+            instr(022, 200, 000, 0),
+            bmod(000, 300, 000, 0),
+            instr(022, 201, 022, 201),
+            instr(022, 202, 040, 100),
+        };
+        long[] data = { 300, Instruction.asInstr(040, 103) };
+        Computer fast = compare(program, data, 30, false);
+        assertEquals(0, fast.core.read(201));
+        assertTrue(fast.core.read(202) > 0);
+    }
+
+    // A B-modified second instruction that becomes a peripheral instruction,
+    // reading the word generator
+    public void testModifiedInput() throws Exception {
+        long[] program = {
+            instr(022, 200, 000, 0),
+            bmod(000, 300, 000, 0),
+            instr(020, 201, 040, 100),
+        };
+        long[] data = { 300, Instruction.asInstr(070, 0) };
+
+        // The block must end after the input instruction
+        Computer computer = create(program, data, false);
+        long start = computer.cpu.instructionCount;
+        computer.cpu.runBlock();
+        assertEquals(4, computer.cpu.instructionCount - start);
+
+        Computer fast = compare(program, data, 30, false);
+        assertEquals(12345, fast.core.read(201));
+    }
+
+    // More instructions than fit in a block
+    public void testMaxLength() throws Exception {
+        long[] program = new long[Block.MAX_LENGTH];
+        for (int i = 0; i < program.length-1; i++)
+            program[i] = instr(022, 200, 022, 201);
+        program[program.length-1] = instr(040, 100, 000, 0);
+
+        Computer computer = create(program, new long[0], false);
+        long start = computer.cpu.instructionCount;
+        computer.cpu.runBlock();
+        assertEquals(Block.MAX_LENGTH, computer.cpu.instructionCount - start);
+
+        compare(program, new long[0], 10, false);
+    }
+
+    // A hot loop chains blocks together until the cycle limit
+    public void testMaxCycles() throws Exception {
+        long[] program = {
+            instr(022, 200, 040, 100),
+        };
+        Computer computer = create(program, new long[0], false);
+        for (int i = 1; i < Block.HOT; i++) {
+            computer.cpu.runBlock();
+            assertEquals(3, computer.cpu.cycles);
+        }
+        computer.cpu.runBlock();
+        assertTrue(computer.cpu.cycles > Block.MAX_CYCLES);
+        assertTrue(computer.cpu.cycles <= Block.MAX_CYCLES + 3);
+
+        compare(program, new long[0], 3*Block.HOT, false);
+    }
+
+    // The speaker must make the same sounds, including for instructions with
+    // different timings
+    public void testSpeaker() throws Exception {
+        long[] program = {
+            instr(030, 300, 053, 301),
+            instr(055, 3, 020, 200),
+            instr(070, 0, 020, 201),
+            instr(040, 100, 000, 0),
+        };
+        long[] data = { 300, 12345, 301, 678 };
+        Computer fast = compare(program, data, 20, true);
+        assertTrue(((SpeakerConsole)fast.console).sounds.size() > 0);
+    }
+}
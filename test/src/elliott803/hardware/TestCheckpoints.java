@@ -0,0 +1,137 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import junit.framework.TestCase;
+import elliott803.machine.Computer;
+import elliott803.machine.Instruction;
+import elliott803.machine.Word;
+
+/**
+ * JUnit tests for CPU checkpoints and going backwards.
+ *
+ * @author Baldwin
+ */
+public class TestCheckpoints extends TestCase {
+
+    static final int STEPS = 200;
+
+    protected void setUp() throws Exception {
+        computer = new Computer();
+        computer.setRealTime(false);
+        cpu = computer.cpu;
+
+        // A loop that counts in 200, reads the word generator into 201 and
+        // adds the two into 202
+        store(100, 022, 200, 030, 200);
+        store(101, 070, 0, 020, 201);
+        store(102, 004, 200, 020, 202);
+        store(103, 040, 100, 000, 0);
+
+        cpu.setCheckpoints(7);
+        cpu.setInstruction(Instruction.asInstr(040, 100));
+        cpu.obey();
+    }
+
+    Computer computer;
+    CPU cpu;
+
+    void store(int addr, int op1, int addr1, int op2, int addr2) {
+        computer.core.write(addr, Word.asInstr(Instruction.asInstr(op1, addr1), 0,
+                                               Instruction.asInstr(op2, addr2)));
+    }
+
+    // Save the registers and data words
+    long[] state() {
+        return new long[] { cpu.instructionCount, cpu.cycleCount, cpu.acc, cpu.scr, cpu.scr2,
+                computer.core.read(200), computer.core.read(201), computer.core.read(202) };
+    }
+
+    void assertState(long[] expected) {
+        long[] actual = state();
+        for (int i = 0; i < expected.length; i++)
+            assertEquals("state " + i, expected[i], actual[i]);
+    }
+
+    public void testStepBack() throws Exception {
+        long[][] states = new long[STEPS][];
+        for (int i = 0; i < STEPS; i++) {
+            states[i] = state();
+            computer.console.setWordGen(i*3);
+            cpu.obey();
+        }
+        long[] last = state();
+
+        // Go back one at a time, then a long way back and forwards again.  The
+        // word generator has changed but the values read must be the same.
+        computer.console.setWordGen(-1);
+        for (int i = STEPS-1; i >= STEPS-20; i--) {
+            assertTrue(cpu.stepBack(1));
+            assertState(states[i]);
+        }
+        assertTrue(cpu.stepBack(100));
+        assertState(states[STEPS-120]);
+        for (int i = STEPS-120; i < STEPS; i++) {
+            assertState(states[i]);
+            computer.console.setWordGen(i*3);
+            cpu.obey();
+        }
+        assertState(last);
+    }
+
+    public void testStepBackLimits() throws Exception {
+        for (int i = 0; i < 10; i++)
+            cpu.obey();
+        long[] state = state();
+        assertFalse(cpu.stepBack(20));
+        assertFalse(cpu.stepBack(-1));
+        assertState(state);
+
+        cpu.setCheckpoints(0);
+        assertFalse(cpu.stepBack(1));
+    }
+
+    public void testStepBackToWrite() throws Exception {
+        for (int i = 0; i < STEPS; i++) {
+            computer.console.setWordGen(i);
+            cpu.obey();
+        }
+
+        // The next instruction obeyed must be the one that stored into 202
+        long value = computer.core.read(202);
+        assertTrue(cpu.stepBackToWrite(202));
+        assertEquals(102, cpu.scr);
+        assertEquals(1, cpu.scr2);
+        assertTrue(computer.core.read(202) != value);
+        cpu.obey();
+        assertEquals(value, computer.core.read(202));
+
+        assertFalse(cpu.stepBackToWrite(300));
+    }
+
+    public void testChainedBlocks() throws Exception {
+        // A hot loop with no peripheral instructions chains for many iterations,
+        // but checkpoints must still be kept at the interval
+        store(110, 022, 200, 040, 110);
+        cpu.setInstruction(Instruction.asInstr(040, 110));
+        cpu.obey();
+        for (int i = 0; i < 20; i++)
+            cpu.runBlock();
+        long[] last = state();
+
+        long count = -1;
+        for (Checkpoints.Checkpoint cp : cpu.checkpoints.checkpoints) {
+            if (count >= 0)
+                assertTrue("checkpoint " + cp.count, cp.count - count <= 7 + 1);
+            count = cp.count;
+        }
+
+        assertTrue(cpu.stepBack(100));
+        for (int i = 0; i < 100; i++)
+            cpu.obey();
+        assertState(last);
+    }
+}
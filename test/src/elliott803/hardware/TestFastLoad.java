@@ -0,0 +1,87 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import junit.framework.TestCase;
+import elliott803.machine.Computer;
+import elliott803.machine.Instruction;
+import elliott803.machine.Word;
+
+/**
+ * JUnit tests for fast loading of binary tapes.
+ *
+ * @author Baldwin
+ */
+public class TestFastLoad extends TestCase {
+
+    static final int START = 8189;
+
+    /*
+     * A tape for the initial instructions that sets the load address, loads
+     * three words at 8189 to 8191 and then, as the address wraps round and the
+     * '16' becomes a '17', puts a new count in location 4 so the next word
+     * makes the loader jump to 8189.  The program at 8189 is a loop that jumps
+     * to itself.
+     */
+    static byte[] tape() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        out.write(0);
+        out.write(0);
+        punch(out, START-4);
+        punch(out, Word.asInstr(Instruction.asInstr(040, START), 0, Instruction.asInstr(040, START)));
+        punch(out, 12345);
+        punch(out, 54321);
+        for (int i = 0; i < 4; i++)
+            punch(out, 0);
+        punch(out, Instruction.asInstr(040-016, START-3) - 1);
+        punch(out, 0);
+        return out.toByteArray();
+    }
+
+    // Punch a word as eight characters, with a marker bit in front of the value
+    static void punch(ByteArrayOutputStream out, long word) {
+        long value = (1L << 39) | (word & ((1L << 39) - 1));
+        for (int i = 35; i >= 0; i -= 5)
+            out.write((int)(value >> i) & 31);
+    }
+
+    Computer load(boolean fast) {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        computer.setFastLoad(fast);
+        computer.pts.setReaderTape(PaperTapeStation.READER1, new ByteArrayInputStream(tape()));
+        computer.cpu.setInstruction(Instruction.asInstr(040, 0));
+        computer.cpu.obey();
+        return computer;
+    }
+
+    public void testFastLoad() throws Exception {
+        Computer fast = load(true);
+        while (fast.cpu.scr != START)
+            fast.cpu.runBlock();
+        assertEquals(12345, fast.core.store[START+1]);
+        assertEquals(54321, fast.core.store[START+2]);
+
+        // Obey the same number of instructions one at a time
+        Computer slow = load(false);
+        while (slow.cpu.instructionCount < fast.cpu.instructionCount)
+            slow.cpu.obey();
+
+        assertTrue(Arrays.equals(slow.core.store, fast.core.store));
+        assertTrue(Arrays.equals(slow.core.getReads(), fast.core.getReads()));
+        assertTrue(Arrays.equals(slow.core.getWrites(), fast.core.getWrites()));
+        assertEquals(slow.cpu.acc, fast.cpu.acc);
+        assertEquals(slow.cpu.overflow, fast.cpu.overflow);
+        assertEquals(slow.cpu.scr, fast.cpu.scr);
+        assertEquals(slow.cpu.scr2, fast.cpu.scr2);
+        assertEquals(slow.cpu.cycleCount, fast.cpu.cycleCount);
+        assertEquals(slow.cpu.characters, fast.cpu.characters);
+    }
+}
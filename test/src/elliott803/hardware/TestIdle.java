@@ -0,0 +1,167 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.io.ByteArrayInputStream;
+
+import junit.framework.TestCase;
+import elliott803.machine.Computer;
+import elliott803.machine.Instruction;
+import elliott803.machine.Word;
+
+/**
+ * JUnit tests for finding idle loops and waiting for something to end them.
+ *
+ * @author Baldwin
+ */
+public class TestIdle extends TestCase {
+
+    static final long TIMEOUT = 5000;
+
+    protected void setUp() throws Exception {
+        computer = new Computer();
+        computer.setRealTime(false);
+        cpu = computer.cpu;
+    }
+
+    Computer computer;
+    CPU cpu;
+
+    void store(int addr, int op1, int addr1, int op2, int addr2) {
+        computer.core.write(addr, Word.asInstr(Instruction.asInstr(op1, addr1), 0,
+                                               Instruction.asInstr(op2, addr2)));
+    }
+
+    void start(int addr) {
+        cpu.setInstruction(Instruction.asInstr(040, addr));
+        cpu.obey();
+    }
+
+    // Check that a loop is never found to be idle
+    void assertNotIdle() {
+        for (int i = 0; i < 1000; i++) {
+            cpu.runBlock();
+            assertFalse(cpu.isIdle());
+        }
+    }
+
+    public void testDynamicStop() throws Exception {
+        store(100, 040, 100, 000, 0);
+        start(100);
+        assertTrue(cpu.isIdle());
+
+        // A jump to itself in the second instruction of a word
+        store(101, 022, 200, 044, 101);
+        start(101);
+        cpu.obey();
+        assertTrue(cpu.isIdle());
+
+        // A conditional jump that will not be taken
+        store(102, 041, 102, 000, 0);
+        start(102);
+        assertFalse(cpu.isIdle());
+    }
+
+    public void testWordGenLoop() throws Exception {
+        // Wait while the word generator is zero
+        store(100, 070, 0, 042, 100);
+        start(100);
+        assertTrue(cpu.isIdle());
+
+        computer.console.setWordGen(1);
+        assertFalse(cpu.isIdle());
+    }
+
+    public void testLongLoop() throws Exception {
+        // A longer loop waiting for the word generator, that is only found
+        // by checking the state at the end of each block
+        store(100, 070, 0, 004, 300);
+        store(101, 042, 100, 040, 101);
+        start(100);
+        boolean idle = false;
+        for (int i = 0; i < 100 && !idle; i++) {
+            cpu.runBlock();
+            idle = cpu.isIdle();
+        }
+        assertTrue(idle);
+    }
+
+    public void testCountingLoop() throws Exception {
+        // The accumulator is different every time round
+        computer.core.write(300, 1);
+        store(100, 004, 300, 040, 100);
+        start(100);
+        assertNotIdle();
+    }
+
+    public void testStoreLoop() throws Exception {
+        // The store changes every time round
+        store(100, 022, 200, 040, 100);
+        start(100);
+        assertNotIdle();
+    }
+
+    /*
+     * Run the CPU on another thread until it stops
+     */
+    Thread startThread() {
+        Thread thread = new Thread() {
+            public void run() {
+                cpu.run();
+            }
+        };
+        thread.start();
+        return thread;
+    }
+
+    // Wait for the CPU to be waiting in an idle loop
+    void waitIdle(Thread thread) throws Exception {
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (thread.getState() != Thread.State.WAITING) {
+            assertTrue("CPU not idle", System.currentTimeMillis() < end);
+            Thread.sleep(5);
+        }
+    }
+
+    long instructions() {
+        synchronized (cpu) {
+            return cpu.instructionCount;
+        }
+    }
+
+    public void testWakeUp() throws Exception {
+        // Wait for the word generator, store it and stop
+        store(100, 070, 0, 042, 100);
+        store(101, 020, 300, 000, 0);
+        store(102, 040, 102, 000, 0);
+        start(100);
+        Thread thread = startThread();
+
+        // Setting the word generator must wake the CPU
+        waitIdle(thread);
+        computer.console.setWordGen(7);
+        long end = System.currentTimeMillis() + TIMEOUT;
+        while (computer.core.read(300) != 7) {
+            assertTrue("CPU not woken by console", System.currentTimeMillis() < end);
+            Thread.sleep(5);
+        }
+
+        // So must loading a tape, although it goes straight back to waiting
+        waitIdle(thread);
+        long count = instructions();
+        computer.pts.setReaderTape(PaperTapeStation.READER1, new ByteArrayInputStream(new byte[1]));
+        end = System.currentTimeMillis() + TIMEOUT;
+        while (instructions() == count) {
+            assertTrue("CPU not woken by reader", System.currentTimeMillis() < end);
+            Thread.sleep(5);
+        }
+        waitIdle(thread);
+
+        cpu.stop();
+        thread.join(TIMEOUT);
+        assertFalse(thread.isAlive());
+    }
+}
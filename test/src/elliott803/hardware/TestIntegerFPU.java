@@ -0,0 +1,116 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import java.util.Random;
+
+import junit.framework.TestCase;
+import elliott803.machine.Computer;
+import elliott803.machine.Word;
+
+/**
+ * JUnit tests for the IntegerFPU class.
+ *
+ * Where the Java double arithmetic is exact the results should be identical to
+ * those from the basic FPU.
+ *
+ * @author Baldwin
+ */
+public class TestIntegerFPU extends TestCase {
+
+    protected void setUp() throws Exception {
+        Computer computer = new Computer(true);
+        fpu = new FPU(computer);
+        ifpu = new IntegerFPU(computer);
+        random = new Random(803);
+    }
+
+    FPU fpu;
+    IntegerFPU ifpu;
+    Random random;
+
+    public void testConvert() throws Exception {
+        long[] values = { 0, 1, -1, 2, -2, 3, 1000, -1000, Word.INT_MASK, -Word.INT_MASK-1 };
+        for (long n : values)
+            assertEquals(fpu.convert(Word.asInteger(n)), ifpu.convert(Word.asInteger(n)));
+        for (int i = 0; i < 10000; i++) {
+            long n = Word.asInteger(random.nextLong());
+            assertEquals(fpu.convert(n), ifpu.convert(n));
+        }
+    }
+
+    public void testAdd() throws Exception {
+        // Exponents no more than 23 apart, so the double sum is exact
+        for (int i = 0; i < 10000; i++) {
+            long n1 = randomFloat(256, 20);
+            long n2 = randomFloat(256, 20);
+            assertEquals(fpu.add(n1, n2), ifpu.add(n1, n2));
+            assertEquals(fpu.isFpOverflow(), ifpu.isFpOverflow());
+            assertEquals(fpu.sub(n1, n2), ifpu.sub(n1, n2));
+            assertEquals(fpu.sub(n2, n1), ifpu.sub(n2, n1));
+        }
+        assertEquals(Word.asFloat(1.0), ifpu.add(Word.asFloat(0.75), Word.asFloat(0.25)));
+        assertEquals(Word.asFloat(-1.0), ifpu.sub(Word.asFloat(-0.75), Word.asFloat(0.25)));
+        assertEquals(0, ifpu.sub(Word.asFloat(0.1), Word.asFloat(0.1)));
+    }
+
+    public void testAddRange() throws Exception {
+        // Very different exponents - the smaller value is truncated away, but a
+        // negative value still reduces the result by one unit in the last place
+        long big = Word.asFloat(1.0);
+        long small = Word.asFloat(1.0e-50);
+        assertEquals(big, ifpu.add(big, small));
+        assertEquals(big, ifpu.add(small, big));
+        long less = ifpu.sub(big, small);
+        assertTrue(Word.getDouble(less) < 1.0);
+        assertEquals(big, ifpu.add(less, Word.asFloat(Math.pow(2, -29))));
+    }
+
+    public void testMul() throws Exception {
+        // Mantissas of no more than 26 bits, so the double product is exact
+        for (int i = 0; i < 10000; i++) {
+            long n1 = randomFloat(256, 100) & ~(0x7L << 9);
+            long n2 = randomFloat(256, 100) & ~(0x7L << 9);
+            assertEquals(fpu.mul(n1, n2), ifpu.mul(n1, n2));
+            assertEquals(fpu.isFpOverflow(), ifpu.isFpOverflow());
+        }
+        assertEquals(Word.asFloat(-0.25), ifpu.mul(Word.asFloat(0.5), Word.asFloat(-0.5)));
+        assertEquals(Word.asFloat(6.0), ifpu.mul(Word.asFloat(1.5), Word.asFloat(4.0)));
+    }
+
+    public void testDiv() throws Exception {
+        assertEquals(Word.asFloat(2.0), ifpu.div(Word.asFloat(1.0), Word.asFloat(0.5)));
+        assertEquals(Word.asFloat(-0.25), ifpu.div(Word.asFloat(1.0), Word.asFloat(-4.0)));
+        assertEquals(Word.asFloat(3.0), ifpu.div(Word.asFloat(-4.5), Word.asFloat(-1.5)));
+        assertEquals(Word.asFloat(1.0/3.0), ifpu.div(Word.asFloat(1.0), Word.asFloat(3.0)));
+        assertEquals(Word.asFloat(-1.0/3.0), ifpu.div(Word.asFloat(-1.0), Word.asFloat(3.0)));
+        assertEquals(0, ifpu.div(0, Word.asFloat(3.0)));
+        assertFalse(ifpu.isFpOverflow());
+
+        // Divide by zero
+        assertEquals(0, ifpu.div(Word.asFloat(1.0), 0));
+        assertTrue(ifpu.isFpOverflow());
+    }
+
+    public void testOverflow() throws Exception {
+        long big = Word.asFloat(1.0e70);
+        assertEquals(0, ifpu.mul(big, big));
+        assertTrue(ifpu.isFpOverflow());
+        assertFalse(ifpu.isOverflow());
+
+        // Underflow is not an error
+        long small = Word.asFloat(1.0e-70);
+        assertEquals(0, ifpu.mul(small, small));
+        assertFalse(ifpu.isFpOverflow());
+    }
+
+    // A random floating point value with exponent in the given range
+    long randomFloat(int exp, int range) {
+        long m = random.nextLong() >> (34 + random.nextInt(4));
+        long e = exp - range/2 + random.nextInt(range);
+        return ((m << 9) | e) & Word.WORD_MASK;
+    }
+}
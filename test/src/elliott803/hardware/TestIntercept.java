@@ -0,0 +1,123 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.hardware;
+
+import junit.framework.TestCase;
+import elliott803.machine.Computer;
+import elliott803.machine.Instruction;
+import elliott803.machine.Word;
+
+/**
+ * JUnit tests for intercepted library routines.
+ *
+ * @author Baldwin
+ */
+public class TestIntercept extends TestCase {
+
+    /*
+     * An intercept for the routine at 100, which adds 200 and 201 into 202 and
+     * jumps to 110.  The result can be made wrong to test the checking.
+     */
+    static class Add extends Intercept {
+        long error;
+
+        Add(long checksum, long error) {
+            super("add", 100, 0, 100, 101, checksum);
+            this.error = error;
+        }
+
+        int call(CPU cpu) {
+            Store core = cpu.computer.core;
+            long acc = cpu.computer.alu.add(core.read(200), core.read(201)) + error;
+            core.write(202, acc);
+            cpu.acc = acc;
+            cpu.scr = 110;
+            cpu.scr2 = 0;
+            cpu.jump = true;
+            cpu.cycles = 2+2+2+1;
+            return 4;
+        }
+    }
+
+    protected void setUp() throws Exception {
+        computer = new Computer();
+        computer.setRealTime(false);
+        cpu = computer.cpu;
+
+        store(100, 030, 200, 004, 201);
+        store(101, 020, 202, 040, 110);
+        store(110, 040, 110, 000, 0);
+        computer.core.write(200, 3);
+        computer.core.write(201, 4);
+        checksum = Intercept.checksum(computer.core, 100, 101);
+
+        cpu.setInstruction(Instruction.asInstr(040, 100));
+        cpu.obey();
+    }
+
+    Computer computer;
+    CPU cpu;
+    long checksum;
+
+    void store(int addr, int op1, int addr1, int op2, int addr2) {
+        computer.core.write(addr, Word.asInstr(Instruction.asInstr(op1, addr1), 0,
+                                               Instruction.asInstr(op2, addr2)));
+    }
+
+    void use(Intercept routine, boolean check) {
+        cpu.intercepts = new Intercept[2*Instruction.ADDR_BITS+2];
+        cpu.intercepts[2*routine.addr] = routine;
+        cpu.checkIntercepts = check;
+    }
+
+    // Obey the routine, up to the first instruction at 110
+    void runRoutine() {
+        while (cpu.instructionCount < 5)
+            cpu.runBlock();
+    }
+
+    public void testIntercept() throws Exception {
+        Add routine = new Add(checksum, 0);
+        use(routine, false);
+        runRoutine();
+        assertEquals(1, routine.calls);
+        assertEquals(7, routine.cycles);
+        assertEquals(7, computer.core.read(202));
+        assertEquals(7, cpu.acc);
+        assertEquals(110, cpu.scr);
+
+        // The call counts as four instructions, then 110 is obeyed in the same block
+        assertEquals(6, cpu.instructionCount);
+    }
+
+    public void testChecksum() throws Exception {
+        Add routine = new Add(checksum+1, 1);
+        use(routine, false);
+        runRoutine();
+        assertEquals(0, routine.calls);
+        assertEquals(7, computer.core.read(202));
+    }
+
+    public void testCheck() throws Exception {
+        Add routine = new Add(checksum, 0);
+        use(routine, true);
+        runRoutine();
+        cpu.runBlock();
+        assertEquals(0, routine.calls);
+        assertEquals(1, routine.verified);
+        assertEquals(0, routine.failed);
+        assertEquals(7, computer.core.read(202));
+    }
+
+    public void testCheckFails() throws Exception {
+        Add routine = new Add(checksum, 1);
+        use(routine, true);
+        runRoutine();
+        cpu.runBlock();
+        assertEquals(1, routine.failed);
+        assertEquals(7, computer.core.read(202));
+    }
+}
@@ -84,4 +84,58 @@ public class TestStore extends TestCase {
         assertEquals(1001, store.store[10]);
         assertEquals(1002, store.store[20]);
     }
+
+    public void testDecode() throws Exception {
+        Store.Decoded d = store.decode(1);
+        assertEquals(II1, d.word);
+        assertEquals(Instruction.asInstr(022, 4), d.instr1);
+        assertEquals(Instruction.asInstr(016, 3), d.instr2);
+        assertEquals(022, d.op1);
+        assertEquals(4, d.addr1);
+        assertEquals(016, d.op2);
+        assertEquals(3, d.addr2);
+        assertTrue(d.bmod);
+        assertSame(d, store.decode(8192 + 1));
+
+        // Writing a word must discard its decoded form
+        long w = Word.asInstr(Instruction.asInstr(040, 100), 0, Instruction.asInstr(020, 200));
+        d = store.decode(100);
+        assertEquals(100, d.word);
+        store.write(100, w);
+        d = store.decode(100);
+        assertEquals(w, d.word);
+        assertEquals(040, d.op1);
+        assertEquals(100, d.addr1);
+        assertEquals(020, d.op2);
+        assertEquals(200, d.addr2);
+        assertFalse(d.bmod);
+
+        // Writing the same value again keeps the decoded form
+        store.write(100, w);
+        assertSame(d, store.decode(100));
+        assertTrue(d.valid);
+    }
+
+    public void testChanges() throws Exception {
+        long changes = store.changes;
+        store.write(100, 100);
+        store.write(2, 1234);
+        assertEquals(changes, store.changes);
+        store.write(100, 1234);
+        assertEquals(changes+1, store.changes);
+        assertEquals(100, store.lastAddr);
+        assertEquals(1234, store.lastValue);
+    }
+
+    public void testCounts() throws Exception {
+        store.read(100);
+        store.read(8192 + 100);
+        store.write(100, 1);
+        store.write(2, 1);
+        store.fetch(100);
+        store.decode(100);
+        assertEquals(2, store.getReads()[100]);
+        assertEquals(1, store.getWrites()[100]);
+        assertEquals(0, store.getWrites()[2]);
+    }
 }
@@ -0,0 +1,77 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit tests for the CallGraph class
+ *
+ * @author Baldwin
+ */
+public class TestCallGraph extends TestCase {
+
+    /*
+     * Profile a loop that calls a subroutine, which calls another
+     */
+    public void testCalls() throws Exception {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        // Main loop at 100, calls 200 with link in 300
+        computer.core.write(100, Word.asInstr(Instruction.asInstr(073, 300), 0, Instruction.asInstr(040, 200)));
+        computer.core.write(101, Word.asInstr(Instruction.asInstr(040, 100), 0, Instruction.asInstr(000, 0)));
+        // Subroutine at 200, calls 250 with link in 301
+        computer.core.write(200, Word.asInstr(Instruction.asInstr(073, 301), 0, Instruction.asInstr(040, 250)));
+        computer.core.write(201, Word.asInstr(Instruction.asInstr(000, 300), 1, Instruction.asInstr(040, 1)));
+        // Subroutine at 250
+        computer.core.write(250, Word.asInstr(Instruction.asInstr(000, 301), 1, Instruction.asInstr(040, 1)));
+        computer.cpu.setInstruction(Instruction.asInstr(040, 100));
+        computer.cpu.obey();
+
+        CallGraph graph = new CallGraph(computer);
+        computer.cpu.callGraph(graph);
+        for (int i = 0; i < 3*9; i++)
+            computer.cpu.obey();
+        computer.cpu.callGraph(null);
+
+        // 3 times round the loop: root, then 200, then 250 called from 200
+        assertEquals(3, graph.nodes);
+        assertEquals(0, graph.parent[1]);
+        assertEquals(200, graph.entry[1]);
+        assertEquals(1, graph.parent[2]);
+        assertEquals(250, graph.entry[2]);
+        assertEquals(3, graph.calls[1]);
+        assertEquals(3, graph.calls[2]);
+        assertEquals(3*(2+1+1), graph.cycles[0]);
+        assertEquals(3*(2+1+2+1), graph.cycles[1]);
+        assertEquals(3*(2+1), graph.cycles[2]);
+        assertEquals(0, graph.depth);
+    }
+
+    /*
+     * A 73 that stores the link for some other use is not a call, even when
+     * there is a jump later on
+     */
+    public void testLinkNotCall() throws Exception {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        computer.core.write(100, Word.asInstr(Instruction.asInstr(073, 300), 0, Instruction.asInstr(030, 300)));
+        computer.core.write(101, Word.asInstr(Instruction.asInstr(040, 102), 0, Instruction.asInstr(000, 0)));
+        computer.core.write(102, Word.asInstr(Instruction.asInstr(040, 100), 0, Instruction.asInstr(000, 0)));
+        computer.cpu.setInstruction(Instruction.asInstr(040, 100));
+        computer.cpu.obey();
+
+        CallGraph graph = new CallGraph(computer);
+        computer.cpu.callGraph(graph);
+        for (int i = 0; i < 3*4; i++)
+            computer.cpu.obey();
+        computer.cpu.callGraph(null);
+
+        assertEquals(1, graph.nodes);
+        assertEquals(3*(2+2+1+1), graph.cycles[0]);
+        assertEquals(0, graph.depth);
+    }
+}
@@ -0,0 +1,57 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit tests for the Coverage class
+ *
+ * @author Baldwin
+ */
+public class TestCoverage extends TestCase {
+
+    /*
+     * Cover a loop that counts down from 2, one instruction at a time
+     */
+    public void testCoverage() throws Exception {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        computer.core.write(100, Word.asInstr(Instruction.asInstr(030, 200), 0, Instruction.asInstr(041, 103)));
+        computer.core.write(101, Word.asInstr(Instruction.asInstr(005, 201), 0, Instruction.asInstr(020, 200)));
+        computer.core.write(102, Word.asInstr(Instruction.asInstr(040, 100), 0, Instruction.asInstr(000, 0)));
+        computer.core.write(103, Word.asInstr(Instruction.asInstr(041, 104), 0, Instruction.asInstr(000, 0)));
+        computer.core.write(104, Word.asInstr(Instruction.asInstr(040, 104), 0, Instruction.asInstr(000, 0)));
+        computer.core.write(200, 2);
+        computer.core.write(201, 1);
+        computer.cpu.setInstruction(Instruction.asInstr(040, 100));
+        computer.cpu.obey();
+
+        Coverage coverage = new Coverage(computer);
+        computer.cpu.coverage(coverage);
+        for (int i = 0; i < 20; i++)
+            computer.cpu.obey();
+        computer.cpu.coverage(null);
+
+        assertTrue(coverage.isExecuted(100, 0));
+        assertTrue(coverage.isExecuted(100, 1));
+        assertTrue(coverage.isExecuted(101, 0));
+        assertTrue(coverage.isExecuted(101, 1));
+        assertTrue(coverage.isExecuted(102, 0));
+        assertFalse(coverage.isExecuted(102, 1));
+        assertTrue(coverage.isExecuted(103, 0));
+        assertFalse(coverage.isExecuted(103, 1));
+        assertTrue(coverage.isExecuted(104, 0));
+
+        // The first 41 went both ways, the second was always taken and 40 is
+        // not conditional
+        assertTrue(coverage.isTaken(100, 1));
+        assertTrue(coverage.isNotTaken(100, 1));
+        assertTrue(coverage.isTaken(103, 0));
+        assertFalse(coverage.isNotTaken(103, 0));
+        assertFalse(coverage.isTaken(102, 0));
+    }
+}
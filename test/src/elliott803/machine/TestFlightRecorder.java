@@ -0,0 +1,60 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit tests for the FlightRecorder class
+ *
+ * @author Baldwin
+ */
+public class TestFlightRecorder extends TestCase {
+
+    public void testSize() throws Exception {
+        assertEquals(4096, new FlightRecorder(null, 4096).ir.length);
+        assertEquals(4096, new FlightRecorder(null, 3000).ir.length);
+        assertEquals(1, new FlightRecorder(null, 1).ir.length);
+    }
+
+    /*
+     * The ring holds the most recent entries, overwriting the oldest
+     */
+    public void testRecord() throws Exception {
+        FlightRecorder recorder = new FlightRecorder(null, 1024);
+        for (int i = 0; i < 5000; i++)
+            recorder.record(i & 8191, i & 1, i*3, i*5, (i & 4) != 0);
+        assertEquals(5000, recorder.count);
+
+        for (int i = 5000-1024; i < 5000; i++) {
+            int x = i & recorder.mask;
+            assertEquals(i & 8191, recorder.flags[x] >> 2);
+            assertEquals(i & 1, (recorder.flags[x] >> 1) & 1);
+            assertEquals((i & 4) != 0, (recorder.flags[x] & 1) != 0);
+            assertEquals(i*3, recorder.ir[x]);
+            assertEquals(i*5, recorder.acc[x]);
+        }
+    }
+
+    public void testParseTriggers() throws Exception {
+        assertEquals(FlightRecorder.RESET, FlightRecorder.parseTriggers("reset"));
+        assertEquals(FlightRecorder.OVERFLOW | FlightRecorder.STOP, FlightRecorder.parseTriggers("overflow, stop"));
+        assertEquals(FlightRecorder.ALL, FlightRecorder.parseTriggers("all"));
+        assertEquals(FlightRecorder.ALL, FlightRecorder.parseTriggers("busy,reset,stop,overflow"));
+        assertEquals(-1, FlightRecorder.parseTriggers("reset,bad"));
+    }
+
+    /*
+     * Events only write the recorder when asked to
+     */
+    public void testEvent() throws Exception {
+        FlightRecorder recorder = new FlightRecorder(null, 16);
+        recorder.setTriggers(FlightRecorder.STOP);
+        recorder.record(1, 0, 0, 0, false);
+        recorder.event(FlightRecorder.RESET);
+        assertEquals(0, recorder.written);
+    }
+}
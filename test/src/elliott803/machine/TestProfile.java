@@ -0,0 +1,69 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit tests for the Profile class
+ *
+ * @author Baldwin
+ */
+public class TestProfile extends TestCase {
+
+    /*
+     * Profile a small loop, one instruction at a time
+     */
+    public void testCount() throws Exception {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        computer.core.write(100, Word.asInstr(Instruction.asInstr(022, 200), 0, Instruction.asInstr(055, 10)));
+        computer.core.write(101, Word.asInstr(Instruction.asInstr(040, 100), 0, Instruction.asInstr(000, 0)));
+        computer.cpu.setInstruction(Instruction.asInstr(040, 100));
+        computer.cpu.obey();
+
+        Profile profile = new Profile(computer);
+        computer.cpu.profile(profile);
+        for (int i = 0; i < 30; i++)
+            computer.cpu.obey();
+        computer.cpu.profile(null);
+        computer.cpu.obey();
+
+        // 10 times round the loop: 22 and 55 at 100, 40 at 101
+        assertEquals(20, profile.instructions[100]);
+        assertEquals(10, profile.instructions[101]);
+        assertEquals(10*2 + 10*12, profile.cycles[100]);
+        assertEquals(10*1, profile.cycles[101]);
+        assertEquals(11, computer.core.read(200));
+    }
+
+    /*
+     * Count the data reads and writes while the profile is taken
+     */
+    public void testData() throws Exception {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        computer.core.write(100, Word.asInstr(Instruction.asInstr(022, 200), 0, Instruction.asInstr(030, 201)));
+        computer.core.write(101, Word.asInstr(Instruction.asInstr(040, 100), 0, Instruction.asInstr(000, 0)));
+        computer.core.read(200);
+        computer.cpu.setInstruction(Instruction.asInstr(040, 100));
+        computer.cpu.obey();
+
+        Profile profile = new Profile(computer);
+        for (int i = 0; i < 30; i++)
+            computer.cpu.obey();
+        profile.reads = Profile.difference(computer.core.getReads(), profile.reads);
+        profile.writes = Profile.difference(computer.core.getWrites(), profile.writes);
+
+        // 10 times round the loop: 22 and 30 both read and write their store
+        // word, though 30 writes back the same value
+        assertEquals(10, profile.reads[200]);
+        assertEquals(10, profile.writes[200]);
+        assertEquals(10, profile.reads[201]);
+        assertEquals(10, profile.writes[201]);
+        assertEquals(0, profile.reads[100]);
+    }
+}
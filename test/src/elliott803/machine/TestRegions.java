@@ -0,0 +1,55 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.util.List;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit tests for the Regions class
+ *
+ * @author Baldwin
+ */
+public class TestRegions extends TestCase {
+
+    /*
+     * Open region 1 around a loop that writes a word 5 times, with region 2
+     * open inside it for the last part of the loop.
+     */
+    public void testRegions() throws Exception {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        computer.core.write(100, Word.asInstr(Instruction.asInstr(030, 301), 0, Instruction.asInstr(072, 8187)));
+        computer.core.write(101, Word.asInstr(Instruction.asInstr(022, 200), 0, Instruction.asInstr(030, 302)));
+        computer.core.write(102, Word.asInstr(Instruction.asInstr(072, 8187), 0, Instruction.asInstr(072, 8186)));
+        computer.core.write(103, Word.asInstr(Instruction.asInstr(030, 301), 0, Instruction.asInstr(072, 8186)));
+        computer.core.write(104, Word.asInstr(Instruction.asInstr(040, 100), 0, Instruction.asInstr(000, 0)));
+        computer.core.write(301, 1);
+        computer.core.write(302, 2);
+        computer.cpu.setInstruction(Instruction.asInstr(040, 100));
+        computer.cpu.obey();
+        assertNull(computer.getRegions());
+
+        for (int i = 0; i < 5*9; i++)
+            computer.cpu.obey();
+
+        List<Regions.Region> regions = computer.getRegions();
+        assertEquals(2, regions.size());
+        Regions.Region r1 = regions.get(0);
+        Regions.Region r2 = regions.get(1);
+        assertEquals(1, r1.id);
+        assertEquals(5, r1.count);
+        assertEquals(5*6, r1.instructions);
+        assertEquals(5*6*2, r1.cycles);
+        assertEquals(5*3, r1.writes);
+        assertEquals(2, r2.id);
+        assertEquals(5, r2.count);
+        assertEquals(5*1, r2.instructions);
+        assertEquals(5*2, r2.cycles);
+        assertEquals(5, computer.core.read(200));
+    }
+}
@@ -0,0 +1,119 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.zip.DeflaterOutputStream;
+
+import junit.framework.TestCase;
+import elliott803.Run;
+
+/**
+ * JUnit tests for snapshot files and carrying on from a dump
+ *
+ * @author Baldwin
+ */
+public class TestSnapshot extends TestCase {
+
+    /*
+     * A loop that counts in 200 and adds the count into 202, using a second
+     * instruction that is B-modified by the 1 in 203.
+     */
+    Computer create() {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        computer.core.write(100, Word.asInstr(Instruction.asInstr(022, 200), 0, Instruction.asInstr(030, 200)));
+        computer.core.write(101, Word.asInstr(Instruction.asInstr(000, 203), 1, Instruction.asInstr(024, 201)));
+        computer.core.write(102, Word.asInstr(Instruction.asInstr(040, 100), 0, Instruction.asInstr(000, 0)));
+        computer.core.write(203, 1);
+        computer.cpu.setInstruction(Instruction.asInstr(040, 100));
+        computer.cpu.obey();
+        return computer;
+    }
+
+    public void testSnapshot() throws Exception {
+        Computer computer = create();
+
+        // Stop at the first instruction of 101, so the next fetch is B-modified
+        for (int i = 0; i < 22; i++)
+            computer.cpu.obey();
+
+        File file = File.createTempFile("elliott", ".snapshot");
+        file.deleteOnExit();
+        new Dump(computer).writeSnapshot(file);
+        Dump snapshot = Dump.readSnapshot(file);
+        assertNotNull(snapshot);
+        assertEquals(23, snapshot.instructions);
+        assertEquals(101, snapshot.scr);
+        assertEquals(0, snapshot.scr2);
+
+        // Carry on from the snapshot on a new computer, alongside the original
+        Computer copy = new Computer();
+        copy.setRealTime(false);
+        copy.restore(snapshot);
+        for (int i = 0; i < 50; i++) {
+            computer.cpu.obey();
+            copy.cpu.obey();
+        }
+
+        Dump d1 = new Dump(computer);
+        Dump d2 = new Dump(copy);
+        assertTrue(Arrays.equals(d1.core, d2.core));
+        assertEquals(d1.acc, d2.acc);
+        assertEquals(d1.scr, d2.scr);
+        assertEquals(d1.scr2, d2.scr2);
+        assertEquals(d1.instructions, d2.instructions);
+        assertEquals(d1.cycles, d2.cycles);
+        assertEquals(0, copy.core.read(201));
+        assertEquals(computer.core.read(202), copy.core.read(202));
+    }
+
+    /*
+     * Write a machine image that just stops at 7, where the ALGOL compiler
+     * would start, with a marker value in 300
+     */
+    File image(long marker) throws Exception {
+        Computer computer = new Computer();
+        computer.core.write(7, Word.asInstr(Instruction.asInstr(040, 7), 0, Instruction.asInstr(040, 7)));
+        computer.core.write(300, marker);
+        File file = File.createTempFile("elliott", ".803");
+        file.deleteOnExit();
+        OutputStream out = new DeflaterOutputStream(new FileOutputStream(file));
+        new Dump(computer).write(out);
+        out.close();
+        return file;
+    }
+
+    public void testSnapshotSource() throws Exception {
+        File image1 = image(1);
+        File image2 = image(2);
+        File file = File.createTempFile("elliott", ".snapshot");
+        file.deleteOnExit();
+        file.delete();
+
+        Dump snapshot = Run.algolSnapshot(image1, file);
+        assertEquals(1, snapshot.core[300]);
+        assertEquals(Dump.checksum(image1), Dump.readSnapshot(file).source);
+
+        // The same snapshot file with a different image must be taken again
+        snapshot = Run.algolSnapshot(image2, file);
+        assertEquals(2, snapshot.core[300]);
+        assertEquals(2, Dump.readSnapshot(file).core[300]);
+        assertEquals(Dump.checksum(image2), Dump.readSnapshot(file).source);
+
+        // And the first image is still matched to its own snapshot
+        assertEquals(1, Run.algolSnapshot(image1, file).core[300]);
+    }
+
+    public void testNotSnapshot() throws Exception {
+        File file = File.createTempFile("elliott", ".snapshot");
+        file.deleteOnExit();
+        assertNull(Dump.readSnapshot(file));
+    }
+}
@@ -0,0 +1,104 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import java.io.File;
+import java.util.Random;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit tests for the Trace class
+ *
+ * @author Baldwin
+ */
+public class TestTrace extends TestCase {
+
+    static final int COUNT = Trace.BUFFER_SIZE*3 + 100;
+
+    File file;
+
+    protected void setUp() throws Exception {
+        file = File.createTempFile("test", ".trace");
+    }
+
+    protected void tearDown() throws Exception {
+        file.delete();
+    }
+
+    /*
+     * Write a trace covering several chunks and read it back
+     */
+    public void testWriteRead() throws Exception {
+        Trace trace = new Trace(new Computer());
+        trace.file = file;
+        Random random = new Random(803);
+        for (int i = 0; i < COUNT; i++) {
+            trace.trace(i & 8191, i & 1, random.nextLong() & Word.WORD_MASK,
+                        random.nextLong() & Word.WORD_MASK, (i % 3) == 0);
+        }
+        trace.write();
+
+        Trace input = Trace.readTrace(file);
+        assertEquals(trace.name, input.name);
+        assertEquals(trace.version, input.version);
+        assertEquals(trace.timestamp, input.timestamp);
+
+        random = new Random(803);
+        for (int i = 0; i < COUNT; i++) {
+            Trace.Entry entry = input.nextEntry();
+            assertNotNull(entry);
+            assertEquals(i & 8191, entry.scr);
+            assertEquals(i & 1, entry.scr2);
+            assertEquals(random.nextLong() & Word.WORD_MASK, entry.ir);
+            assertEquals(random.nextLong() & Word.WORD_MASK, entry.acc);
+            assertEquals((i % 3) == 0, entry.oflow);
+        }
+        assertNull(input.nextEntry());
+    }
+
+    /*
+     * A program that turns on tracing itself, while running with nothing
+     * watching the CPU, has the rest of its instructions traced.  The loop at
+     * 101 runs five times, and each word and jump is traced.
+     */
+    public void testProgramTrace() throws Exception {
+        Computer computer = new Computer();
+        computer.setRealTime(false);
+        computer.core.write(100, Word.asInstr(Instruction.asInstr(026, 200), 0, Instruction.asInstr(072, 8189)));
+        computer.core.write(101, Word.asInstr(Instruction.asInstr(022, 200), 0, Instruction.asInstr(030, 200)));
+        computer.core.write(102, Word.asInstr(Instruction.asInstr(005, 202), 0, Instruction.asInstr(041, 101)));
+        computer.core.write(103, Word.asInstr(Instruction.asInstr(040, 103), 0, Instruction.asInstr(000, 0)));
+        computer.core.write(202, 5);
+        computer.runInstructions(100);
+
+        Trace trace = computer.trace;
+        assertNotNull(trace);
+        trace.file = file;
+        computer.traceStop();
+
+        Trace input = Trace.readTrace(file);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(101, input.nextEntry().scr);
+            assertEquals(102, input.nextEntry().scr);
+        }
+        assertEquals(103, input.nextEntry().scr);
+        assertNull(input.nextEntry());
+    }
+
+    /*
+     * An empty trace still has a header
+     */
+    public void testEmpty() throws Exception {
+        Trace trace = new Trace(new Computer());
+        trace.file = file;
+        trace.write();
+
+        Trace input = Trace.readTrace(file);
+        assertNotNull(input);
+        assertNull(input.nextEntry());
+    }
+}
@@ -0,0 +1,89 @@
+/**
+ * Elliott Model 803B Simulator
+ *
+ * (C) Copyright Tim Baldwin 2009, 2013
+ */
+package elliott803.machine;
+
+import junit.framework.TestCase;
+
+/**
+ * JUnit tests for the TraceFilter class
+ *
+ * @author Baldwin
+ */
+public class TestTraceFilter extends TestCase {
+
+    public void testAddr() throws Exception {
+        TraceFilter filter = new TraceFilter("addr=100-199,300");
+        assertFalse(filter.accept(99, 0, 0));
+        assertTrue(filter.accept(100, 0, 0));
+        assertTrue(filter.accept(199, 0, 0));
+        assertFalse(filter.accept(200, 0, 0));
+        assertTrue(filter.accept(300, 0, 0));
+    }
+
+    public void testGroup() throws Exception {
+        TraceFilter filter = new TraceFilter("group=4,7");
+        assertTrue(filter.accept(10, 040, 0));
+        assertTrue(filter.accept(10, 047, 0));
+        assertTrue(filter.accept(10, 074, 0));
+        assertFalse(filter.accept(10, 030, 0));
+        assertFalse(filter.accept(10, 055, 0));
+    }
+
+    public void testAcc() throws Exception {
+        TraceFilter filter = new TraceFilter("acc<0");
+        assertTrue(filter.accept(10, 0, Word.asInteger(-5)));
+        assertFalse(filter.accept(10, 0, 0));
+        assertFalse(filter.accept(10, 0, 5));
+
+        filter = new TraceFilter("acc>100");
+        assertTrue(filter.accept(10, 0, 101));
+        assertFalse(filter.accept(10, 0, 100));
+
+        filter = new TraceFilter("acc=-3");
+        assertTrue(filter.accept(10, 0, Word.asInteger(-3)));
+        assertFalse(filter.accept(10, 0, 3));
+
+        filter = new TraceFilter("acc!=0");
+        assertTrue(filter.accept(10, 0, 1));
+        assertFalse(filter.accept(10, 0, 0));
+    }
+
+    public void testSample() throws Exception {
+        TraceFilter filter = new TraceFilter("sample=3; group=0");
+        int count = 0;
+        for (int i = 0; i < 30; i++) {
+            if (filter.accept(i, 001, 0))
+                count++;
+            filter.accept(i, 040, 0);
+        }
+        assertEquals(10, count);
+    }
+
+    public void testStartStop() throws Exception {
+        TraceFilter filter = new TraceFilter("start=20 stop=30");
+        assertFalse(filter.accept(10, 0, 0));
+        assertTrue(filter.accept(20, 0, 0));
+        assertTrue(filter.accept(10, 0, 0));
+        assertTrue(filter.accept(30, 0, 0));
+        assertFalse(filter.accept(10, 0, 0));
+        assertTrue(filter.accept(20, 0, 0));
+
+        filter.reset();
+        assertFalse(filter.accept(10, 0, 0));
+    }
+
+    public void testIncorrect() throws Exception {
+        String[] bad = { "addr", "addr=x", "size=10", "acc~1", "group=" };
+        for (String text : bad) {
+            try {
+                new TraceFilter(text);
+                fail(text);
+            } catch (IllegalArgumentException e) {
+                // Expected
+            }
+        }
+    }
+}